@@ -0,0 +1,122 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+
+abstract class AbstractTokenReader implements TokenReader {
+    protected Token token = null;
+    protected String name = null;
+    protected long number;
+    protected double real;
+    protected Number big;
+    protected String text;
+    protected Object binary;
+
+    protected abstract Token advance() throws IOException;
+
+    @Override
+    public final Token nextToken() throws IOException {
+        if (this.token != Token.NAME)
+            this.name = null;
+        return this.token = this.advance();
+    }
+
+    @Override
+    public Token currentToken() {
+        return this.token;
+    }
+
+    @Override
+    public String currentName() {
+        return this.name;
+    }
+
+    @Override
+    public boolean booleanValue() {
+        return this.number != 0;
+    }
+
+    @Override
+    public int intValue() {
+        if (this.token == Token.FLOAT || this.token == Token.DOUBLE)
+            return (int) this.real;
+        if (this.token == Token.NUMBER)
+            return this.big.intValue();
+        return (int) this.number;
+    }
+
+    @Override
+    public long longValue() {
+        if (this.token == Token.FLOAT || this.token == Token.DOUBLE)
+            return (long) this.real;
+        if (this.token == Token.NUMBER)
+            return this.big.longValue();
+        return this.number;
+    }
+
+    @Override
+    public double doubleValue() {
+        if (this.token == Token.INT || this.token == Token.LONG)
+            return this.number;
+        if (this.token == Token.NUMBER)
+            return this.big.doubleValue();
+        return this.real;
+    }
+
+    @Override
+    public String stringValue() {
+        return this.token == Token.NAME ? this.name : this.text;
+    }
+
+    @Override
+    public Object binaryValue() {
+        return this.binary;
+    }
+
+    @Override
+    public Object value() {
+        switch (this.token) {
+        case BOOLEAN:
+            return this.number != 0;
+        case INT:
+            return (int) this.number;
+        case LONG:
+            return this.number;
+        case FLOAT:
+            return (float) this.real;
+        case DOUBLE:
+            return this.real;
+        case NUMBER:
+            return this.big;
+        case STRING:
+            return this.text;
+        case NAME:
+            return this.name;
+        case BINARY:
+            return this.binary;
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public void skipChildren() throws IOException {
+        if (this.token != Token.BEGIN_OBJECT && this.token != Token.BEGIN_ARRAY)
+            return;
+        for (int open = 1; open > 0; ) {
+            switch (this.nextToken()) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                open++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                open--;
+                break;
+            case END_DOCUMENT:
+                throw new IOException("Unexpected end of document");
+            default:
+                break;
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.mogware.system.dif;
 
-import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -32,30 +31,12 @@ public class BasicObject extends LinkedHashMap<String, Object>
 
     @Override
     public boolean isList() {
-        if (containsKey("$items") && !containsKey("$keys"))
-            return (this.target instanceof Collection);
-        if (this.type == null)
-            return false;
-        try {
-            Class c = Decoder.classForName(this.type);
-            if (Collection.class.isAssignableFrom(c))
-                return true;
-        } catch (IOException ex) { }
-        return false;
+        return (this.target instanceof Collection);
     }
 
     @Override
     public boolean isMap() {
-        if (containsKey("$items") && containsKey("$keys"))
-            return (this.target instanceof Map);
-        if (this.type == null)
-            return false;
-        try {
-            Class c = Decoder.classForName(this.type);
-            if (Map.class.isAssignableFrom(c))
-                return true;
-        } catch (IOException ex) { }
-        return false;
+        return (this.target instanceof Map);
     }
 
     @Override
@@ -82,7 +63,7 @@ public class BasicObject extends LinkedHashMap<String, Object>
 
     @Override
     public ArrayType getKeys() {
-        return (ArrayType) get("$items");
+        return (ArrayType) get("$keys");
     }
 
     @Override
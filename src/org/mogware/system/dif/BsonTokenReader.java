@@ -0,0 +1,444 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BsonTokenReader extends AbstractTokenReader {
+    private final InputBuffer in;
+    private final boolean rootValueAsArray;
+    private final List<String> typeNames = new ArrayList<>();
+    private final Map<String, String> typeIds = new HashMap<>();
+
+    private boolean[] arrays = new boolean[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int[] indexes = new int[16];
+    private int depth = 0;
+    private int docStart = 0;
+    private int docLength = -1;
+    private boolean multipleRoots = false;
+    private byte pending = BsonReader.EOO;
+
+    public BsonTokenReader(InputStream in) {
+        this(in, false);
+    }
+
+    public BsonTokenReader(InputStream in, boolean rootValueAsArray) {
+        if (in == null)
+            throw new NullPointerException("in is null");
+        this.in = new InputBuffer(in);
+        this.rootValueAsArray = rootValueAsArray;
+    }
+
+    public final void setMultipleRoots(boolean multipleRoots) {
+        this.multipleRoots = multipleRoots;
+    }
+
+    @Override
+    protected Token advance() throws IOException {
+        if (this.docLength < 0) {
+            if (this.multipleRoots && this.in.atEnd())
+                return Token.END_DOCUMENT;
+            return this.startDocument();
+        }
+        if (this.depth == 0) {
+            if (this.in.numRead() - this.docStart != this.docLength)
+                throw new IllegalStateException("bad data. lengths don't match");
+            if (this.multipleRoots && ! this.in.atEnd())
+                return this.startDocument();
+            return Token.END_DOCUMENT;
+        }
+        if (this.pending != BsonReader.EOO) {
+            final byte type = this.pending;
+            this.pending = BsonReader.EOO;
+            if ("$type".equals(this.name))
+                return this.readTypeName(type);
+            return this.readValue(type);
+        }
+        final int top = this.depth - 1;
+        final byte type = this.in.read();
+        if (type == BsonReader.EOO)
+            return this.pop();
+        if (! this.arrays[top]) {
+            this.name = this.in.readName();
+            this.pending = type;
+            return Token.NAME;
+        }
+        final int index = this.in.readIndex();
+        if (index < 0)
+            throw new IOException("array keys must be numeric");
+        if (index != this.indexes[top]++)
+            throw new IOException(
+                    "expected array key to be: " + (this.indexes[top] - 1));
+        return this.readValue(type);
+    }
+
+    private Token startDocument() throws IOException {
+        this.docStart = this.in.numRead();
+        this.in.setMax(this.docStart + 4);
+        this.docLength = this.in.readInt();
+        this.in.setMax(this.docStart + this.docLength);
+        return this.push(this.rootValueAsArray, this.docLength);
+    }
+
+    @Override
+    public void skipChildren() throws IOException {
+        if (this.token != Token.BEGIN_OBJECT && this.token != Token.BEGIN_ARRAY)
+            return;
+        final int top = this.depth - 1;
+        this.in.skip(this.starts[top] + this.lengths[top] -
+                this.in.numRead() - 1);
+        if (this.in.read() != BsonReader.EOO)
+            throw new IllegalStateException("bad data. missing terminator");
+        this.token = this.pop();
+    }
+
+    private Token push(boolean array, int len) {
+        if (this.depth == this.arrays.length) {
+            int size = this.depth << 1;
+            this.arrays = Arrays.copyOf(this.arrays, size);
+            this.starts = Arrays.copyOf(this.starts, size);
+            this.lengths = Arrays.copyOf(this.lengths, size);
+            this.indexes = Arrays.copyOf(this.indexes, size);
+        }
+        this.arrays[this.depth] = array;
+        this.starts[this.depth] = this.in.numRead() - 4;
+        this.lengths[this.depth] = len;
+        this.indexes[this.depth] = 0;
+        this.depth++;
+        return array ? Token.BEGIN_ARRAY : Token.BEGIN_OBJECT;
+    }
+
+    private Token pop() {
+        this.depth--;
+        final boolean array = this.arrays[this.depth];
+        if (this.in.numRead() - this.starts[this.depth] !=
+                this.lengths[this.depth])
+            throw new IllegalStateException(array ?
+                    "array length does not match" :
+                    "object length does not match");
+        return array ? Token.END_ARRAY : Token.END_OBJECT;
+    }
+
+    private Token readTypeName(byte type) throws IOException {
+        if (type == BsonReader.STRING) {
+            String name = this.in.readUTF8String();
+            String known = this.typeIds.get(name);
+            if (known == null) {
+                this.typeIds.put(name, name);
+                this.typeNames.add(name);
+            }
+            else
+                name = known;
+            this.text = name;
+            return Token.STRING;
+        }
+        if (type == BsonReader.NUMBER_INT) {
+            int id = this.in.readInt();
+            if (id < 0 || id >= this.typeNames.size())
+                throw new IOException("unknown type id: " + id);
+            this.text = this.typeNames.get(id);
+            return Token.STRING;
+        }
+        return this.readValue(type);
+    }
+
+    private Token readValue(byte type) throws IOException {
+        switch (type) {
+        case BsonReader.NULL:
+            return Token.NULL;
+        case BsonReader.BOOLEAN:
+            this.number = this.in.read() > 0 ? 1 : 0;
+            return Token.BOOLEAN;
+        case BsonReader.NUMBER:
+            this.real = this.in.readDouble();
+            return Token.DOUBLE;
+        case BsonReader.NUMBER_INT:
+            this.number = this.in.readInt();
+            return Token.INT;
+        case BsonReader.NUMBER_LONG:
+            this.number = this.in.readLong();
+            return Token.LONG;
+        case BsonReader.STRING:
+            this.text = this.in.readUTF8String();
+            return Token.STRING;
+        case BsonReader.BINARY:
+            {
+                int size = this.in.readInt();
+                byte subtype = this.in.read();
+                if (size < 0 || size > MAX_STRING)
+                    throw new IOException("bad binary size: " + size);
+                byte[] data = new byte[size];
+                this.in.fillbuf(data, size);
+                this.binary = BsonTokenReader.toArray(subtype, data);
+            }
+            return Token.BINARY;
+        case BsonReader.ARRAY:
+            return this.push(true, this.in.readInt());
+        case BsonReader.OBJECT:
+            return this.push(false, this.in.readInt());
+        default:
+            throw new IOException("do not understand type : " + type);
+        }
+    }
+
+    private static Object toArray(byte subtype, byte[] data)
+            throws IOException {
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(data)
+                .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        switch (subtype) {
+        case BsonReader.SUBTYPE_SHORT:
+            {
+                short[] value = new short[BsonTokenReader.count(data, 2)];
+                buf.asShortBuffer().get(value);
+                return value;
+            }
+        case BsonReader.SUBTYPE_INT:
+            {
+                int[] value = new int[BsonTokenReader.count(data, 4)];
+                buf.asIntBuffer().get(value);
+                return value;
+            }
+        case BsonReader.SUBTYPE_LONG:
+            {
+                long[] value = new long[BsonTokenReader.count(data, 8)];
+                buf.asLongBuffer().get(value);
+                return value;
+            }
+        case BsonReader.SUBTYPE_FLOAT:
+            {
+                float[] value = new float[BsonTokenReader.count(data, 4)];
+                buf.asFloatBuffer().get(value);
+                return value;
+            }
+        case BsonReader.SUBTYPE_DOUBLE:
+            {
+                double[] value = new double[BsonTokenReader.count(data, 8)];
+                buf.asDoubleBuffer().get(value);
+                return value;
+            }
+        default:
+            return data;
+        }
+    }
+
+    private static int count(byte[] data, int size) throws IOException {
+        if (data.length % size != 0)
+            throw new IOException("bad typed array length");
+        return data.length / size;
+    }
+
+    private class InputBuffer {
+        private final InputStream in;
+        private int read = 0;
+        private int max = 4;
+
+        public InputBuffer(final InputStream in) {
+            this.in = in;
+            len = 0;
+            pos = 0;
+        }
+
+        private int need(final int num) throws IOException {
+            if (len - pos >= num) {
+                final int ret = pos;
+                pos += num;
+                this.read += num;
+                return ret;
+            }
+
+            if (num >= inputBuffer.length)
+                throw new IllegalArgumentException("buffer too small");
+
+            final int remaining = len - pos;
+            if (pos > 0) {
+                System.arraycopy(inputBuffer, pos, inputBuffer, 0, remaining);
+                pos = 0;
+                len = remaining;
+            }
+
+            int toread = Math.min(this.max - this.read - remaining,
+                    inputBuffer.length - len);
+            while (toread > 0) {
+                int n = in.read(inputBuffer, len, toread);
+                if (n <= 0)
+                    throw new IOException("unexpected EOF");
+                toread -= n;
+                len += n;
+            }
+
+            int ret = pos;
+            pos += num;
+            read += num;
+            return ret;
+        }
+
+        public boolean atEnd() throws IOException {
+            if (pos < len)
+                return false;
+            pos = 0;
+            len = 0;
+            int n;
+            while ((n = in.read(inputBuffer, 0, 1)) == 0) ;
+            if (n < 0)
+                return true;
+            len = n;
+            return false;
+        }
+
+        public int numRead() {
+            return this.read;
+        }
+
+        public int getMax() {
+            return this.max;
+        }
+
+        public void setMax(int max) {
+            this.max = max;
+        }
+
+        public byte read() throws IOException {
+            return inputBuffer[this.need(1)];
+        }
+
+        public int readInt() throws IOException {
+            return readInt(inputBuffer, this.need(4));
+        }
+
+        private int readInt(byte[] data, int offset) {
+            int x = 0;
+            x |= (0xFF & data[offset+0]) << 0;
+            x |= (0xFF & data[offset+1]) << 8;
+            x |= (0xFF & data[offset+2]) << 16;
+            x |= (0xFF & data[offset+3]) << 24;
+            return x;
+        }
+
+        public long readLong() throws IOException {
+            return readLong(inputBuffer, this.need(8));
+        }
+
+        public long readLong(byte[] data , int offset) {
+            long x = 0;
+            x |= (0xFFL & data[offset+0]) << 0;
+            x |= (0xFFL & data[offset+1]) << 8;
+            x |= (0xFFL & data[offset+2]) << 16;
+            x |= (0xFFL & data[offset+3]) << 24;
+            x |= (0xFFL & data[offset+4]) << 32;
+            x |= (0xFFL & data[offset+5]) << 40;
+            x |= (0xFFL & data[offset+6]) << 48;
+            x |= (0xFFL & data[offset+7]) << 56;
+            return x;
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        public String readUTF8String() throws IOException {
+            final int size = readInt();
+            if ( size <= 0 || size > MAX_STRING )
+                throw new IOException("bad string size: " + size);
+
+            if (size < inputBuffer.length / 2) {
+                if (size == 1) {
+                    read();
+                    return "";
+                }
+
+                return new String(inputBuffer, need(size), size - 1, "UTF-8");
+            }
+
+            final byte [] buf = size < random.length ? random : new byte[size];
+            fillbuf(buf, size);
+
+            try {
+                return new String(buf, 0, size - 1 , "UTF-8" );
+            }
+            catch (UnsupportedOperationException ex){
+                throw new IOException("impossible" , ex);
+            }
+        }
+
+        public void skip(int len) throws IOException {
+            while (len > 0) {
+                final int n = Math.min(len, random.length);
+                fillbuf(random, n);
+                len -= n;
+            }
+        }
+
+        public String readName() throws IOException {
+            int n = 0;
+            byte b;
+            while ((b = read()) != 0) {
+                if (n == random.length) {
+                    bb.reset();
+                    bb.write(random, 0, n);
+                    do {
+                        bb.write(b);
+                    } while ((b = read()) != 0);
+                    return bb.asString("UTF-8");
+                }
+                random[n++] = b;
+            }
+            return symbols.lookup(random, 0, n);
+        }
+
+        public int readIndex() throws IOException {
+            byte b = read();
+            if (b == 0)
+                return -1;
+            int index = 0;
+            for (; b != 0; b = read()) {
+                if (b < '0' || b > '9' || index < 0) {
+                    while (read() != 0) ;
+                    return -1;
+                }
+                index = index * 10 + (b - '0');
+            }
+            return index;
+        }
+
+        private void fillbuf(byte b[]) throws IOException {
+            fillbuf(b , b.length);
+        }
+
+        public void fillbuf(byte b[], int len) throws IOException {
+            final int have = BsonTokenReader.this.len - pos;
+            final int tocopy = Math.min(len, have);
+            System.arraycopy(inputBuffer, pos, b, 0, tocopy);
+
+            pos += tocopy;
+            this.read += tocopy;
+            len -= tocopy;
+
+            int off = tocopy;
+            while (len > 0){
+                final int x = in.read(b, off, len);
+                if (x <= 0)
+                    throw new IOException("unexpected EOF");
+                this.read += x;
+                off += x;
+                len -= x;
+            }
+        }
+    }
+
+    private final byte[] random = new byte[1024];
+    private final byte[] inputBuffer = new byte[1024];
+
+    private final ByteBuffer bb = new ByteBuffer();
+    private final SymbolTable symbols = SymbolTable.getDefault();
+
+    private int pos; // current offset into inputBuffer
+    private int len; // length of valid data in inputBuffer
+
+    private static final int MAX_STRING = ( 32 * 1024 * 1024 );
+}
@@ -3,7 +3,9 @@ package org.mogware.system.dif;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BsonWriter implements Writer {
     private final OutputStream out;
@@ -15,9 +17,17 @@ public class BsonWriter implements Writer {
     public static final byte ARRAY = 4;
     public static final byte BOOLEAN = 8;
     public static final byte NULL = 10;
+    public static final byte BINARY = 5;
     public static final byte NUMBER_INT = 16;
     public static final byte NUMBER_LONG = 18;
 
+    public static final byte SUBTYPE_GENERIC = 0x00;
+    public static final byte SUBTYPE_SHORT = (byte) 0x80;
+    public static final byte SUBTYPE_INT = (byte) 0x81;
+    public static final byte SUBTYPE_LONG = (byte) 0x82;
+    public static final byte SUBTYPE_FLOAT = (byte) 0x83;
+    public static final byte SUBTYPE_DOUBLE = (byte) 0x84;
+
     private enum Scope {
         EMPTY_ARRAY,
         NONEMPTY_ARRAY,
@@ -46,6 +56,7 @@ public class BsonWriter implements Writer {
 
     private String deferredName = null;
     private final OutputBuffer buffer = new OutputBuffer();
+    private Map<String, Integer> typeIds = null;
 
     public BsonWriter(OutputStream out) {
         if (out == null)
@@ -53,11 +64,16 @@ public class BsonWriter implements Writer {
         this.out = out;
     }
 
+    public final void setTypeDictionary(boolean typeDictionary) {
+        this.typeIds = typeDictionary ? new HashMap<String, Integer>() : null;
+    }
+
     @Override
     public Writer beginObject(Class type) throws IOException {
-        return this.open(Scope.EMPTY_OBJECT, OBJECT)
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, OBJECT);
+        if (type != null)
+            this.writeTypeName(type);
+        return this;
     }
 
     @Override
@@ -77,10 +93,10 @@ public class BsonWriter implements Writer {
 
     @Override
     public Writer beginList(Class type) throws IOException {
-        this.open(Scope.EMPTY_OBJECT, OBJECT)
-                .propertyName("$type")
-                .value(this.typeOf(type))
-                .propertyName("$items");
+        this.open(Scope.EMPTY_OBJECT, OBJECT);
+        if (type != null)
+            this.writeTypeName(type);
+        this.propertyName("$items");
         return this.open(Scope.EMPTY_ARRAY, ARRAY);
     }
 
@@ -93,9 +109,10 @@ public class BsonWriter implements Writer {
 
     @Override
     public Writer beginMap(Class type) throws IOException {
-        return this.open(Scope.EMPTY_OBJECT, OBJECT)
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, OBJECT);
+        if (type != null)
+            this.writeTypeName(type);
+        return this;
     }
 
     @Override
@@ -136,6 +153,14 @@ public class BsonWriter implements Writer {
         return this;
     }
 
+    @Override
+    public Writer reference(int id) throws IOException {
+        this.open(Scope.EMPTY_OBJECT, OBJECT)
+                .propertyName("$ref")
+                .value(id);
+        return this.close(Scope.EMPTY_OBJECT, Scope.NONEMPTY_OBJECT);
+    }
+
     @Override
     public Writer nullValue() throws IOException {
         this.buffer.write(NULL);
@@ -208,6 +233,47 @@ public class BsonWriter implements Writer {
         return this;
     }
 
+    @Override
+    public Writer values(byte[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_GENERIC, len).put(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(short[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_SHORT, len * 2)
+                .asShortBuffer().put(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(int[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_INT, len * 4)
+                .asIntBuffer().put(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(long[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_LONG, len * 8)
+                .asLongBuffer().put(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(float[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_FLOAT, len * 4)
+                .asFloatBuffer().put(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(double[] value, int off, int len) throws IOException {
+        this.writeBinary(SUBTYPE_DOUBLE, len * 8)
+                .asDoubleBuffer().put(value, off, len);
+        return this;
+    }
+
     public void flush() throws IOException {
         this.buffer.pipe(this.out);
         this.buffer.reset();
@@ -266,10 +332,32 @@ public class BsonWriter implements Writer {
         this.deferredName = null;
     }
 
+    private java.nio.ByteBuffer writeBinary(byte subtype, int len)
+            throws IOException {
+        this.buffer.write(BINARY);
+        this.writeDeferredName();
+        this.buffer.writeInt(len);
+        this.buffer.write(subtype);
+        return this.buffer.reserve(len);
+    }
+
     private Context peek() {
         return this.stack.get(stack.size() - 1);
     }
 
+    private void writeTypeName(Class type) throws IOException {
+        String name = this.typeOf(type);
+        this.propertyName("$type");
+        Integer id = this.typeIds == null ? null : this.typeIds.get(name);
+        if (id == null) {
+            if (this.typeIds != null)
+                this.typeIds.put(name, this.typeIds.size());
+            this.value(name);
+        }
+        else
+            this.value((int) id);
+    }
+
     private String typeOf(Class type) {
         if (boolean.class == type || Boolean.class == type)
             return "boolean";
@@ -304,6 +392,16 @@ public class BsonWriter implements Writer {
             this.write(x >> 24);
         }
 
+        public java.nio.ByteBuffer reserve(int len) {
+            this.ensure(len);
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer
+                    .wrap(this.buffer, this.cur, len).slice()
+                    .order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            this.cur += len;
+            this.size = Math.max(this.cur, this.size);
+            return buf;
+        }
+
         public void writeInt(int pos, int x) {
             final int save = this.getPosition();
             this.setPosition(pos);
@@ -0,0 +1,41 @@
+package org.mogware.system.dif;
+
+import java.io.InputStream;
+
+class ByteBufferInputStream extends InputStream {
+    private final java.nio.ByteBuffer buf;
+
+    public ByteBufferInputStream(java.nio.ByteBuffer buf) {
+        if (buf == null)
+            throw new NullPointerException("buf is null");
+        this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+        return this.buf.hasRemaining() ? this.buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        if (! this.buf.hasRemaining())
+            return -1;
+        int n = Math.min(len, this.buf.remaining());
+        this.buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int k = (int) Math.max(0, Math.min(n, this.buf.remaining()));
+        this.buf.position(this.buf.position() + k);
+        return k;
+    }
+
+    @Override
+    public int available() {
+        return this.buf.remaining();
+    }
+}
@@ -0,0 +1,298 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CborTokenReader extends AbstractTokenReader {
+    private static final int BREAKER =
+            (CborReader.TYPE_SIMPLE_VALUE << 5) | CborReader.BREAK;
+
+    private final InputStream in;
+    private final byte[] scratch = new byte[8];
+    private final byte[] keys = new byte[256];
+    private final SymbolTable symbols = SymbolTable.getDefault();
+    private final List<String> typeNames = new ArrayList<>();
+    private final Map<String, String> typeIds = new HashMap<>();
+
+    private boolean[] maps = new boolean[16];
+    private long[] remaining = new long[16];
+    private int depth = 0;
+    private boolean started = false;
+    private boolean pending = false;
+    private boolean multipleRoots = false;
+
+    public CborTokenReader(InputStream in) {
+        if (in == null)
+            throw new NullPointerException("in is null");
+        this.in = in;
+    }
+
+    public final void setMultipleRoots(boolean multipleRoots) {
+        this.multipleRoots = multipleRoots;
+    }
+
+    @Override
+    protected Token advance() throws IOException {
+        if (this.depth == 0) {
+            if (this.started && ! this.multipleRoots)
+                return Token.END_DOCUMENT;
+            this.started = true;
+            int symbol = this.in.read();
+            if (symbol < 0 && this.multipleRoots)
+                return Token.END_DOCUMENT;
+            return this.readValue(symbol);
+        }
+        if (this.pending) {
+            this.pending = false;
+            if ("$type".equals(this.name))
+                return this.readTypeName(this.in.read());
+            return this.readValue(this.in.read());
+        }
+        int top = this.depth - 1;
+        if (this.remaining[top] == 0)
+            return this.pop();
+        int symbol = this.in.read();
+        if (this.remaining[top] > 0)
+            this.remaining[top]--;
+        else if (symbol == BREAKER)
+            return this.pop();
+        if (! this.maps[top])
+            return this.readValue(symbol);
+        if (CborReader.TYPE_TEXT_STRING != ((symbol >>> 5) & 0x07))
+            throw new IOException("need string key");
+        this.name = this.readName(symbol & 0x1F);
+        this.pending = true;
+        return Token.NAME;
+    }
+
+    private Token push(boolean map, long size) {
+        if (this.depth == this.maps.length) {
+            this.maps = Arrays.copyOf(this.maps, this.depth << 1);
+            this.remaining = Arrays.copyOf(this.remaining, this.depth << 1);
+        }
+        this.maps[this.depth] = map;
+        this.remaining[this.depth] = size;
+        this.depth++;
+        return map ? Token.BEGIN_OBJECT : Token.BEGIN_ARRAY;
+    }
+
+    private Token pop() {
+        this.depth--;
+        return this.maps[this.depth] ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    private Token readValue(int symbol) throws IOException {
+        if (symbol < 0)
+            throw new IOException("EOF");
+        switch ((symbol >>> 5) & 0x07) {
+        case CborReader.TYPE_UNSIGNED_INTEGER:
+            this.number = this.readUInt(symbol & 0x1F, false);
+            return Token.LONG;
+        case CborReader.TYPE_NEGATIVE_INTEGER:
+            this.number = -1 ^ this.readUInt(symbol & 0x1F, false);
+            return Token.LONG;
+        case CborReader.TYPE_TEXT_STRING:
+            this.text = this.readString(symbol & 0x1F);
+            return Token.STRING;
+        case CborReader.TYPE_BYTE_STRING:
+            this.binary = this.readBytes(symbol & 0x1F);
+            return Token.BINARY;
+        case CborReader.TYPE_TAG:
+            this.binary = this.readTypedArray(
+                    this.readUInt(symbol & 0x1F, false));
+            return Token.BINARY;
+        case CborReader.TYPE_ARRAY:
+            return this.push(false, this.readUInt(symbol & 0x1F, true));
+        case CborReader.TYPE_MAP:
+            return this.push(true, this.readUInt(symbol & 0x1F, true));
+        case CborReader.TYPE_SIMPLE_VALUE:
+            switch (symbol & 0x1F) {
+            case CborReader.SINGLE_PRECISION_FLOAT:
+                this.real = Float.intBitsToFloat(this.readUInt32());
+                return Token.FLOAT;
+            case CborReader.DOUBLE_PRECISION_FLOAT:
+                this.real = Double.longBitsToDouble(this.readUInt64());
+                return Token.DOUBLE;
+            case CborReader.FALSE:
+                this.number = 0;
+                return Token.BOOLEAN;
+            case CborReader.TRUE:
+                this.number = 1;
+                return Token.BOOLEAN;
+            case CborReader.NULL:
+                return Token.NULL;
+            default:
+                throw new IOException("not supported");
+            }
+        default:
+            throw new IOException("not supported");
+        }
+    }
+
+    private Token readTypeName(int symbol) throws IOException {
+        switch ((symbol >>> 5) & 0x07) {
+        case CborReader.TYPE_TEXT_STRING:
+            {
+                String name = this.readString(symbol & 0x1F);
+                String known = this.typeIds.get(name);
+                if (known == null) {
+                    this.typeIds.put(name, name);
+                    this.typeNames.add(name);
+                }
+                else
+                    name = known;
+                this.text = name;
+            }
+            return Token.STRING;
+        case CborReader.TYPE_TAG:
+            {
+                if (this.readUInt(symbol & 0x1F, false) !=
+                        CborReader.TAG_TYPE_REF)
+                    throw new IOException("not supported");
+                symbol = this.in.read();
+                if (((symbol >>> 5) & 0x07) !=
+                        CborReader.TYPE_UNSIGNED_INTEGER)
+                    throw new IOException("bad string reference");
+                long id = this.readUInt(symbol & 0x1F, false);
+                if (id < 0 || id >= this.typeNames.size())
+                    throw new IOException("unknown type id: " + id);
+                this.text = this.typeNames.get((int) id);
+            }
+            return Token.STRING;
+        default:
+            return this.readValue(symbol);
+        }
+    }
+
+    private Object readTypedArray(long tag) throws IOException {
+        int symbol = this.in.read();
+        if (((symbol >>> 5) & 0x07) != CborReader.TYPE_BYTE_STRING)
+            throw new IOException("not supported");
+        byte[] data = this.readBytes(symbol & 0x1F);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(data);
+        // uint8 arrays come back as the same bits in a signed byte[],
+        // as untagged byte strings do
+        if (tag == CborReader.TAG_UINT8 || tag == CborReader.TAG_SINT8)
+            return data;
+        if (tag == CborReader.TAG_SINT16_BE) {
+            short[] array = new short[CborTokenReader.count(data, 2)];
+            buf.asShortBuffer().get(array);
+            return array;
+        }
+        if (tag == CborReader.TAG_SINT32_BE) {
+            int[] array = new int[CborTokenReader.count(data, 4)];
+            buf.asIntBuffer().get(array);
+            return array;
+        }
+        if (tag == CborReader.TAG_SINT64_BE) {
+            long[] array = new long[CborTokenReader.count(data, 8)];
+            buf.asLongBuffer().get(array);
+            return array;
+        }
+        if (tag == CborReader.TAG_FLOAT32_BE) {
+            float[] array = new float[CborTokenReader.count(data, 4)];
+            buf.asFloatBuffer().get(array);
+            return array;
+        }
+        if (tag == CborReader.TAG_FLOAT64_BE) {
+            double[] array = new double[CborTokenReader.count(data, 8)];
+            buf.asDoubleBuffer().get(array);
+            return array;
+        }
+        throw new IOException("not supported");
+    }
+
+    private static int count(byte[] data, int size) throws IOException {
+        if (data.length % size != 0)
+            throw new IOException("bad typed array length");
+        return data.length / size;
+    }
+
+    private String readName(int length) throws IOException {
+        long size = this.readUInt(length, false);
+        if (size < 0)
+            throw new IOException("Infinite-length strings not supported");
+        if (size > this.keys.length)
+            return this.readStringData(size);
+        this.readFully(this.keys, (int) size);
+        return this.symbols.lookup(this.keys, 0, (int) size);
+    }
+
+    private String readString(int length) throws IOException {
+        return this.readStringData(this.readUInt(length, false));
+    }
+
+    private String readStringData(long size) throws IOException {
+        return new String(this.readByteData(size), "UTF-8");
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        return this.readByteData(this.readUInt(length, false));
+    }
+
+    private byte[] readByteData(long size) throws IOException {
+        if (size < 0)
+            throw new IOException("Infinite-length strings not supported");
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("String length too long");
+        return this.readFully(new byte[(int) size], (int) size);
+    }
+
+    private long readUInt(int length, boolean breakAllowed)
+            throws IOException {
+        if (length < CborReader.ONE_BYTE)
+            return length;
+        if (length == CborReader.ONE_BYTE)
+            return this.readUInt8();
+        if (length == CborReader.TWO_BYTES)
+            return this.readUInt16();
+        if (length == CborReader.FOUR_BYTES)
+            return this.readUInt32() & 0xFFFFFFFFL;
+        if (length == CborReader.EIGHT_BYTES)
+            return this.readUInt64();
+        if (breakAllowed && length == CborReader.BREAK)
+            return -1;
+        throw new IOException("bad integer, invalid length");
+    }
+
+    private long readUInt64() throws IOException {
+        byte[] buf = this.readFully(this.scratch, 8);
+        return (buf[0] & 0xFFL) << 56 | (buf[1] & 0xFFL) << 48 |
+                (buf[2] & 0xFFL) << 40 | (buf[3] & 0xFFL) << 32 |
+                (buf[4] & 0xFFL) << 24 | (buf[5] & 0xFFL) << 16 |
+                (buf[6] & 0xFFL) << 8 | (buf[7] & 0xFFL);
+    }
+
+    private int readUInt32() throws IOException {
+        byte[] buf = this.readFully(this.scratch, 4);
+        return (buf[0] & 0xFF) << 24 | (buf[1] & 0xFF) << 16 |
+                (buf[2] & 0xFF) << 8 | (buf[3] & 0xFF);
+    }
+
+    private int readUInt16() throws IOException {
+        byte[] buf = this.readFully(this.scratch, 2);
+        return (buf[0] & 0xFF) << 8 | (buf[1] & 0xFF);
+    }
+
+    private int readUInt8() throws IOException {
+        int b = this.in.read();
+        if (b < 0)
+            throw new IOException("EOF");
+        return b;
+    }
+
+    private byte[] readFully(byte[] buf, int len) throws IOException {
+        for (int n = 0; n < len; ) {
+            int count = this.in.read(buf, n, len - n);
+            if (count < 0)
+                throw new IOException("EOF");
+            n += count;
+        }
+        return buf;
+    }
+}
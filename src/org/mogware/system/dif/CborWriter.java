@@ -3,17 +3,29 @@ package org.mogware.system.dif;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CborWriter implements Writer {
     final ByteOutputStream out;
 
+    final static int TYPE_UNSIGNED_INTEGER = 0x00;
     final static int TYPE_NEGATIVE_INTEGER = 0x01;
+    final static int TYPE_BYTE_STRING = 0x02;
     final static int TYPE_TEXT_STRING = 0x03;
     final static int TYPE_ARRAY = 0x04;
     final static int TYPE_MAP = 0x05;
+    final static int TYPE_TAG = 0x06;
     final static int TYPE_SIMPLE_VALUE = 0x07;
 
+    final static int TAG_TYPE_REF = 53744;
+    final static int TAG_SINT16_BE = 73;
+    final static int TAG_SINT32_BE = 74;
+    final static int TAG_SINT64_BE = 75;
+    final static int TAG_FLOAT32_BE = 81;
+    final static int TAG_FLOAT64_BE = 82;
+
     final static int ONE_BYTE = 0x18;
     final static int TWO_BYTES = 0x19;
     final static int FOUR_BYTES = 0x1a;
@@ -42,6 +54,8 @@ public class CborWriter implements Writer {
     }
 
     private String deferredName = null;
+    private Map<String, Integer> typeIds = null;
+    private java.nio.ByteBuffer scratch = null;
 
     public CborWriter(OutputStream out) {
         if (out == null)
@@ -49,12 +63,17 @@ public class CborWriter implements Writer {
         this.out = new ByteOutputStream(out);
     }
 
+    public final void setTypeDictionary(boolean typeDictionary) {
+        this.typeIds = typeDictionary ? new HashMap<String, Integer>() : null;
+    }
+
     @Override
     public Writer beginObject(Class type) throws IOException {
         this.writeDeferredName();
-        return this.open(Scope.EMPTY_OBJECT, TYPE_MAP)
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, TYPE_MAP);
+        if (type != null)
+            this.writeTypeName(type);
+        return this;
     }
 
     @Override
@@ -76,10 +95,10 @@ public class CborWriter implements Writer {
     @Override
     public Writer beginList(Class type) throws IOException {
         writeDeferredName();
-        this.open(Scope.EMPTY_OBJECT, TYPE_MAP)
-                .propertyName("$type")
-                .value(this.typeOf(type))
-                .propertyName("$items");
+        this.open(Scope.EMPTY_OBJECT, TYPE_MAP);
+        if (type != null)
+            this.writeTypeName(type);
+        this.propertyName("$items");
         this.writeDeferredName();
         return this.open(Scope.EMPTY_ARRAY, TYPE_ARRAY);
     }
@@ -93,9 +112,10 @@ public class CborWriter implements Writer {
     @Override
     public Writer beginMap(Class type) throws IOException {
         this.writeDeferredName();
-        return this.open(Scope.EMPTY_OBJECT, TYPE_MAP)
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, TYPE_MAP);
+        if (type != null)
+            this.writeTypeName(type);
+        return this;
     }
 
     @Override
@@ -137,6 +157,15 @@ public class CborWriter implements Writer {
         return this;
     }
 
+    @Override
+    public Writer reference(int id) throws IOException {
+        this.writeDeferredName();
+        this.open(Scope.EMPTY_OBJECT, TYPE_MAP)
+                .propertyName("$ref")
+                .value(id);
+        return this.close(Scope.EMPTY_OBJECT, Scope.NONEMPTY_OBJECT);
+    }
+
     @Override
     public Writer nullValue() throws IOException {
         this.writeDeferredName();
@@ -214,6 +243,100 @@ public class CborWriter implements Writer {
         return this;
     }
 
+    @Override
+    public Writer values(byte[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_BYTE_STRING, len);
+        this.out.writeBytes(value, off, len);
+        return this;
+    }
+
+    @Override
+    public Writer values(short[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_SINT16_BE);
+        this.out.writeType(TYPE_BYTE_STRING, (long) len * 2);
+        java.nio.ByteBuffer buf = this.scratch();
+        for (int n = 0; n < len; ) {
+            int count = Math.min(len - n, buf.capacity() / 2);
+            buf.clear();
+            buf.asShortBuffer().put(value, off + n, count);
+            this.out.writeBytes(buf.array(), 0, count * 2);
+            n += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Writer values(int[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_SINT32_BE);
+        this.out.writeType(TYPE_BYTE_STRING, (long) len * 4);
+        java.nio.ByteBuffer buf = this.scratch();
+        for (int n = 0; n < len; ) {
+            int count = Math.min(len - n, buf.capacity() / 4);
+            buf.clear();
+            buf.asIntBuffer().put(value, off + n, count);
+            this.out.writeBytes(buf.array(), 0, count * 4);
+            n += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Writer values(long[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_SINT64_BE);
+        this.out.writeType(TYPE_BYTE_STRING, (long) len * 8);
+        java.nio.ByteBuffer buf = this.scratch();
+        for (int n = 0; n < len; ) {
+            int count = Math.min(len - n, buf.capacity() / 8);
+            buf.clear();
+            buf.asLongBuffer().put(value, off + n, count);
+            this.out.writeBytes(buf.array(), 0, count * 8);
+            n += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Writer values(float[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_FLOAT32_BE);
+        this.out.writeType(TYPE_BYTE_STRING, (long) len * 4);
+        java.nio.ByteBuffer buf = this.scratch();
+        for (int n = 0; n < len; ) {
+            int count = Math.min(len - n, buf.capacity() / 4);
+            buf.clear();
+            buf.asFloatBuffer().put(value, off + n, count);
+            this.out.writeBytes(buf.array(), 0, count * 4);
+            n += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Writer values(double[] value, int off, int len) throws IOException {
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_FLOAT64_BE);
+        this.out.writeType(TYPE_BYTE_STRING, (long) len * 8);
+        java.nio.ByteBuffer buf = this.scratch();
+        for (int n = 0; n < len; ) {
+            int count = Math.min(len - n, buf.capacity() / 8);
+            buf.clear();
+            buf.asDoubleBuffer().put(value, off + n, count);
+            this.out.writeBytes(buf.array(), 0, count * 8);
+            n += count;
+        }
+        return this;
+    }
+
     public void flush() throws IOException {
         this.out.flush();
     }
@@ -286,6 +409,28 @@ public class CborWriter implements Writer {
         this.stack.set(stack.size() - 1, topOfStack);
     }
 
+    private java.nio.ByteBuffer scratch() {
+        if (this.scratch == null)
+            this.scratch = java.nio.ByteBuffer.allocate(4096);
+        return this.scratch;
+    }
+
+    private void writeTypeName(Class type) throws IOException {
+        String name = this.typeOf(type);
+        this.propertyName("$type");
+        Integer id = this.typeIds == null ? null : this.typeIds.get(name);
+        if (id == null) {
+            if (this.typeIds != null)
+                this.typeIds.put(name, this.typeIds.size());
+            this.value(name);
+            return;
+        }
+        this.writeDeferredName();
+        this.beforeValue();
+        this.out.writeType(TYPE_TAG, TAG_TYPE_REF);
+        this.out.writeType(TYPE_UNSIGNED_INTEGER, id);
+    }
+
     private String typeOf(Class type) {
         if (boolean.class == type || Boolean.class == type)
             return "boolean";
@@ -331,6 +476,11 @@ public class CborWriter implements Writer {
             this.out.write((majorType << 5) | (value & 0x1f));
         }
 
+        public void writeBytes(byte[] b, int off, int len)
+                throws IOException {
+            this.out.write(b, off, len);
+        }
+
         public void writeString(String value) throws IOException {
             this.writeString(TYPE_TEXT_STRING,
                     value == null ? null : value.getBytes("UTF-8"));
@@ -1,21 +1,165 @@
 package org.mogware.system.dif;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ClassMeta {
-    private final Map<String, Meta> classMetaCache = new ConcurrentHashMap<>();
+    private static final ClassMeta shared = new ClassMeta();
+    private static final Primitives prims = new Primitives();
+    private static final SymbolTable symbols = SymbolTable.getDefault();
 
-    public static class Meta extends LinkedHashMap<String, Field> {}
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Queue<WeakReference<Class>> loaded =
+            new ConcurrentLinkedQueue<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final ClassValue<Entry> classMetaCache = new ClassValue<Entry>() {
+        @Override
+        protected Entry computeValue(Class c) {
+            return ClassMeta.this.newEntry(c);
+        }
+    };
+
+    private static final class Entry {
+        final Meta meta;
+        final AtomicBoolean counted = new AtomicBoolean();
+        volatile WritePlan plan;
+
+        Entry(Meta meta) {
+            this.meta = meta;
+        }
+    }
+
+    public ClassMeta() {
+        this(0);
+    }
+
+    public ClassMeta(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize must not be negative");
+        this.maxSize = maxSize;
+    }
+
+    public static ClassMeta getDefault() {
+        return ClassMeta.shared;
+    }
+
+    public enum Kind {
+        BOOLEAN, BYTE, CHAR, SHORT, INT, LONG, FLOAT, DOUBLE,
+        BOXED, OBJECT, INACCESSIBLE
+    }
+
+    public static final class Property {
+        public final String name;
+        public final Kind kind;
+        public final Class type;
+        public final boolean hiddenEnum;
+        public final FieldAccessor accessor;
+
+        Property(FieldAccessor accessor) {
+            Field field = accessor.getField();
+            int modifiers = field.getModifiers();
+            this.name = accessor.getName();
+            this.type = accessor.getType();
+            this.kind = ClassMeta.kindOf(accessor);
+            this.hiddenEnum = field.getDeclaringClass().isEnum() &&
+                    !Modifier.isPublic(modifiers);
+            this.accessor = accessor;
+        }
+    }
+
+    public static final class WritePlan {
+        private final Property[] properties;
+
+        WritePlan(Property[] properties) {
+            this.properties = properties;
+        }
+
+        public Property[] getProperties() {
+            return this.properties;
+        }
+    }
+
+    public static class Meta extends LinkedHashMap<String, Field> {
+        private FieldAccessor[] accessors;
+        private final Map<String, FieldAccessor> byName = new HashMap<>();
+
+        public FieldAccessor[] getAccessors() {
+            return this.accessors;
+        }
+
+        public FieldAccessor getAccessor(String name) {
+            return this.byName.get(name);
+        }
+    }
 
     public Meta getDeepDeclaredFields(Class c) {
-        Meta classInfo = this.classMetaCache.get(c.getName());
-        if (classInfo != null)
-            return classInfo;
-        classInfo = new Meta();
+        return this.lookup(c).meta;
+    }
+
+    public WritePlan getWritePlan(Class c) {
+        Entry entry = this.lookup(c);
+        WritePlan plan = entry.plan;
+        if (plan == null)
+            entry.plan = plan = ClassMeta.newWritePlan(entry.meta);
+        return plan;
+    }
+
+    public long getHitCount() {
+        return this.lookups.sum() - this.misses.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    private Entry lookup(Class c) {
+        this.lookups.increment();
+        Entry entry = this.classMetaCache.get(c);
+        if (! entry.counted.get() && entry.counted.compareAndSet(false, true))
+            this.installed(c);
+        return entry;
+    }
+
+    private Entry newEntry(Class c) {
+        return new Entry(ClassMeta.newMeta(c));
+    }
+
+    private void installed(Class c) {
+        this.misses.increment();
+        if (this.maxSize > 0) {
+            while (this.size.get() >= this.maxSize && this.evictOldest()) ;
+            this.loaded.add(new WeakReference<>(c));
+            this.size.incrementAndGet();
+        }
+    }
+
+    private boolean evictOldest() {
+        WeakReference<Class> ref = this.loaded.poll();
+        if (ref == null)
+            return false;
+        Class c = ref.get();
+        if (c != null)
+            this.classMetaCache.remove(c);
+        this.size.decrementAndGet();
+        return true;
+    }
+
+    private static Meta newMeta(Class c) {
+        Meta classInfo = new Meta();
         for (Class curr = c; curr != null; curr = curr.getSuperclass()) {
             try {
                 Field[] local = curr.getDeclaredFields();
@@ -31,14 +175,57 @@ public class ClassMeta {
                             classInfo.put(curr.getName() + '.' +
                                     field.getName(), field);
                         else
-                            classInfo.put(field.getName(), field);
+                            classInfo.put(ClassMeta.symbols.intern(
+                                    field.getName()), field);
                     }
                 }
             } catch (ThreadDeath t) {
                 throw t;
             } catch (Throwable ex) { }
         }
-        classMetaCache.put(c.getName(), classInfo);
+        int n = 0;
+        classInfo.accessors = new FieldAccessor[classInfo.size()];
+        for (Map.Entry<String, Field> entry : classInfo.entrySet()) {
+            FieldAccessor accessor =
+                    new FieldAccessor(entry.getKey(), entry.getValue());
+            classInfo.accessors[n++] = accessor;
+            classInfo.byName.put(entry.getKey(), accessor);
+        }
         return classInfo;
     }
+
+    private static WritePlan newWritePlan(Meta classInfo) {
+        List<Property> properties = new ArrayList<>();
+        for (FieldAccessor accessor : classInfo.getAccessors()) {
+            if ((accessor.getField().getModifiers() & Modifier.TRANSIENT) == 0)
+                properties.add(new Property(accessor));
+        }
+        return new WritePlan(
+                properties.toArray(new Property[properties.size()]));
+    }
+
+    private static Kind kindOf(FieldAccessor accessor) {
+        Class type = accessor.getType();
+        if (! accessor.isAccessible())
+            return Kind.INACCESSIBLE;
+        if (type == boolean.class)
+            return Kind.BOOLEAN;
+        if (type == byte.class)
+            return Kind.BYTE;
+        if (type == char.class)
+            return Kind.CHAR;
+        if (type == short.class)
+            return Kind.SHORT;
+        if (type == int.class)
+            return Kind.INT;
+        if (type == long.class)
+            return Kind.LONG;
+        if (type == float.class)
+            return Kind.FLOAT;
+        if (type == double.class)
+            return Kind.DOUBLE;
+        if (ClassMeta.prims.isPrimitive(type))
+            return Kind.BOXED;
+        return Kind.OBJECT;
+    }
 }
@@ -12,7 +12,9 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ClassReaders {
     public interface ClassReader {
@@ -20,6 +22,10 @@ public class ClassReaders {
                 throws IOException;
     }
 
+    public interface ClassResolver {
+        Class resolve(String name) throws IOException;
+    }
+
     static final ThreadLocal<SimpleDateFormat> dateFormat =
             new ThreadLocal<SimpleDateFormat>() {
         public SimpleDateFormat initialValue() {
@@ -29,19 +35,28 @@ public class ClassReaders {
 
     private static final Primitives prims = new Primitives();
 
+    private static final ClassReader none = new NullReader();
+
+    private final Map<Class, ClassReader> resolved = new ConcurrentHashMap<>();
+
     private final List<Object[]> readers  = new ArrayList<>();
-    {
+
+    public ClassReaders() {
+        this(Decoder::classForName);
+    }
+
+    public ClassReaders(ClassResolver resolver) {
         this.addReader(String.class, new StringReader());
         this.addReader(Date.class, new DateReader());
         this.addReader(BigInteger.class, new BigIntegerReader());
         this.addReader(BigDecimal.class, new BigDecimalReader());
-        this.addReader(Calendar.class, new CalendarReader());
+        this.addReader(Calendar.class, new CalendarReader(resolver));
         this.addReader(TimeZone.class, new TimeZoneReader());
         this.addReader(Locale.class, new LocaleReader());
         this.addReader(java.sql.Timestamp.class, new TimestampReader());
         this.addReader(java.sql.Date.class, new SqlDateReader());
         this.addReader(URI.class, new UriReader());
-        this.addReader(Class.class, new JavaClassReader());
+        this.addReader(Class.class, new JavaClassReader(resolver));
     }
 
     public void addReader(Class c, ClassReader reader)
@@ -50,13 +65,26 @@ public class ClassReaders {
             Class clazz = (Class)item[0];
             if (clazz == c) {
                 item[1] = reader;
+                this.resolved.clear();
                 return;
             }
         }
         this.readers.add(new Object[] {c, reader});
+        this.resolved.clear();
     }
 
     public ClassReader getClosestReader(Class componentClass) {
+        ClassReader reader = this.resolved.get(componentClass);
+        if (reader == null) {
+            reader = this.findClosestReader(componentClass);
+            if (reader == null)
+                reader = ClassReaders.none;
+            this.resolved.put(componentClass, reader);
+        }
+        return reader == ClassReaders.none ? null : reader;
+    }
+
+    private ClassReader findClosestReader(Class componentClass) {
         ClassReader closestReader = null;
         int minDistance = Integer.MAX_VALUE;
 
@@ -206,6 +234,16 @@ public class ClassReaders {
 
 
     public static class CalendarReader implements ClassReader {
+        private final ClassResolver resolver;
+
+        public CalendarReader() {
+            this(Decoder::classForName);
+        }
+
+        public CalendarReader(ClassResolver resolver) {
+            this.resolver = resolver;
+        }
+
         @Override
         public Object read(Object obj, LinkedList<Target> stack)
                 throws IOException {
@@ -220,7 +258,7 @@ public class ClassReaders {
                     if (((Target) obj).getTarget() != null)
                         clazz = ((Target) obj).getTarget().getClass();
                     else
-                        clazz = Decoder.classForName(
+                        clazz = this.resolver.resolve(
                                 ((ObjectType) obj).getType()
                         );
                     Calendar calendar = (Calendar) Decoder.newInstance(clazz);
@@ -312,16 +350,34 @@ public class ClassReaders {
     }
 
     public static class JavaClassReader implements ClassReader {
+        private final ClassResolver resolver;
+
+        public JavaClassReader() {
+            this(Decoder::classForName);
+        }
+
+        public JavaClassReader(ClassResolver resolver) {
+            this.resolver = resolver;
+        }
+
         @Override
         public Object read(Object obj, LinkedList<Target> stack)
                 throws IOException {
             if (obj instanceof String)
-                return Decoder.classForName((String)obj);
+                return this.resolver.resolve((String)obj);
             if (obj instanceof Target && ((Target) obj).isObjectType())
-                return Decoder.classForName(
+                return this.resolver.resolve(
                         (String)((ObjectType) obj).get("value")
                 );
             throw new IOException("unable to parse class: " + obj);
         }
     }
+
+    private static class NullReader implements ClassReader {
+        @Override
+        public Object read(Object obj, LinkedList<Target> stack)
+                throws IOException {
+            throw new IllegalStateException("No reader registered");
+        }
+    }
 }
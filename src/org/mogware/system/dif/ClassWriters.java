@@ -11,7 +11,9 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ClassWriters {
     public interface ClassWriter {
@@ -27,6 +29,10 @@ public class ClassWriters {
         }
     };
 
+    private static final ClassWriter none = new NullWriter();
+
+    private final Map<Class, ClassWriter> resolved = new ConcurrentHashMap<>();
+
     private final List<Object[]> writers  = new ArrayList<>();
     {
         this.addWriter(String.class, new StringWriter());
@@ -48,13 +54,26 @@ public class ClassWriters {
             Class clazz = (Class)item[0];
             if (clazz == c) {
                 item[1] = writer;
+                this.resolved.clear();
                 return;
             }
         }
         this.writers.add(new Object[] {c, writer});
+        this.resolved.clear();
     }
 
     public ClassWriter getClosestWriter(Class componentClass) {
+        ClassWriter writer = this.resolved.get(componentClass);
+        if (writer == null) {
+            writer = this.findClosestWriter(componentClass);
+            if (writer == null)
+                writer = ClassWriters.none;
+            this.resolved.put(componentClass, writer);
+        }
+        return writer == ClassWriters.none ? null : writer;
+    }
+
+    private ClassWriter findClosestWriter(Class componentClass) {
         ClassWriter closestWriter = null;
         int minDistance = Integer.MAX_VALUE;
 
@@ -251,4 +270,20 @@ public class ClassWriters {
             out.value(((Class) obj).getName());
         }
     }
+
+    private static class NullWriter implements ClassWriter {
+        @Override
+        public void write(Writer out, Object obj) throws IOException {
+            throw new IllegalStateException("No writer registered");
+        }
+
+        @Override
+        public boolean hasPrimitiveForm() { return false; }
+
+        @Override
+        public void writePrimitiveForm(Writer out, Object obj)
+                throws IOException {
+            throw new IllegalStateException("No writer registered");
+        }
+    }
 }
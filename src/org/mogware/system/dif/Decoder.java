@@ -1,18 +1,30 @@
 package org.mogware.system.dif;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URL;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -20,15 +32,25 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.mogware.system.delegates.Func1;
 
 public class Decoder {
-    private final ClassReaders readers = new ClassReaders();
+    private final ClassReaders readers =
+            new ClassReaders(this::resolveClass);
 
     // Save memory by re-using common Characters (Characters are immutable)
     private static final Character[] charCache = new Character[128];
@@ -59,26 +81,149 @@ public class Decoder {
         Decoder.nameToClass.put("class", Class.class);
     }
 
-    private static final Map<Class, Object[]> constructors = new HashMap<>();
+    private static final int maxUnknownClasses = 1024;
+    private static final Object unknownClass = new Object();
+    private static final Map<ClassLoader, ClassCache> classCaches =
+            new WeakHashMap<>();
+
+    private static class ClassCache {
+        final Map<String, Object> classes = new ConcurrentHashMap<>();
+        final AtomicInteger unknown = new AtomicInteger();
+    }
+
+    private static final ClassValue<Instantiator> constructors =
+            new ClassValue<Instantiator>() {
+        @Override
+        protected Instantiator computeValue(Class c) {
+            return new Instantiator(c);
+        }
+    };
     private static final Primitives prims = new Primitives();
-    private static final ClassMeta meta = new ClassMeta();
     private static final Class[] emptyClassArray = new Class[]{};
 
+    private Target[] identities = new Target[16];
+    private int identityCount = 0;
+
+    private boolean directBinding = false;
+    private final LinkedList<Target> bindStack = new LinkedList<>();
+    private final Map<Target, Type> declaredTypes = new IdentityHashMap<>();
+
+    private ClassLoader classLoader = null;
+    private ClassCache classCache = null;
+    private Func1<String, Boolean> classFilter = null;
+    private Allocator allocator = null;
+    private ClassMeta meta = ClassMeta.getDefault();
+    private Level[] levels = new Level[16];
+    private int depth = 0;
+
+    public interface Allocator {
+        public Object allocate(Class type) throws IOException;
+    }
+
     public Decoder() {
     }
 
+    public final void setDirectBinding(boolean directBinding) {
+        this.directBinding = directBinding;
+    }
+
+    public final void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.classCache = null;
+    }
+
+    public final void setClassFilter(Func1<String, Boolean> classFilter) {
+        this.classFilter = classFilter;
+    }
+
+    public final void setAllocator(Allocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public final void setClassMeta(ClassMeta meta) {
+        if (meta == null)
+            throw new NullPointerException("meta is null");
+        this.meta = meta;
+    }
+
     public Object decode(Reader reader) throws IOException {
+        return this.decode(reader, Object.class);
+    }
+
+    public <T> T decode(Reader reader, final Class<T> type)
+            throws IOException {
         final List<Target> result = new ArrayList<>();
-        reader.parse(new DefaultHandler() {
+        reader.parse(this.newRootHandler(reader, type, result));
+        return this.convertRoot(result, type);
+    }
+
+    public <T> T convert(Target node, Class<T> type) throws IOException {
+        this.identityCount = 0;
+        if (this.classLoader == null)
+            this.classCache = null;
+        return this.convertRoot(Collections.singletonList(node), type);
+    }
+
+    public <T> Iterator<T> decodeAll(final Reader reader, final Class<T> type) {
+        return new Iterator<T>() {
+            private final List<Target> result = new ArrayList<>(1);
+            private T next = null;
+            private boolean ready = false;
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext() {
+                if (this.ready || this.done)
+                    return this.ready;
+                this.result.clear();
+                try {
+                    if (reader.parseNext(newRootHandler(reader, type,
+                            this.result))) {
+                        this.next = convertRoot(this.result, type);
+                        this.ready = true;
+                    }
+                    else
+                        this.done = true;
+                } catch (IOException ex) {
+                    this.done = true;
+                    throw new UncheckedIOException(ex);
+                }
+                return this.ready;
+            }
+
+            @Override
+            public T next() {
+                if (! this.hasNext())
+                    throw new NoSuchElementException();
+                T value = this.next;
+                this.next = null;
+                this.ready = false;
+                return value;
+            }
+        };
+    }
+
+    public <T> Stream<T> stream(Reader reader, Class<T> type) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                this.decodeAll(reader, type), Spliterator.ORDERED), false);
+    }
+
+    private Reader.ContentHandler newRootHandler(final Reader reader,
+            final Class type, final List<Target> result) {
+        this.identityCount = 0;
+        this.depth = 0;
+        if (this.classLoader == null)
+            this.classCache = null;
+        return new DefaultHandler() {
             @Override
             public void beginObject() throws IOException {
                 ObjectType obj = reader.newObjectType();
-                parseObject(reader, obj);
+                parseObject(reader, obj, type);
                 result.add(obj);
             }
             @Override
             public void beginArray() throws IOException {
-                ArrayType ary = reader.newArrayType();
+                NumericArray ary = new NumericArray();
                 parseArray(reader, ary);
                 result.add(ary);
             }
@@ -87,82 +232,221 @@ public class Decoder {
                 if (value == null) return;  // can only be "null"
                 throw new IllegalStateException("Primitive unexpected");
             }
-        });
+            @Override
+            public void primitiveArray(Object value) throws IOException {
+                ArrayType ary = reader.newArrayType();
+                ary.setTarget(value);
+                result.add(ary);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T convertRoot(List<Target> result, Class<T> type)
+            throws IOException {
         if (result.isEmpty())
             return null;
         if (result.size() != 1)
             throw new IOException("Single root needed");
-        return convertParsedToJava(result.get(0));
+        try {
+            return (T) convertParsedToJava(result.get(0), type);
+        } finally {
+            Arrays.fill(this.identities, 0, this.identityCount, null);
+            this.identityCount = 0;
+            this.declaredTypes.clear();
+        }
     }
 
-    private static void parseObject(final Reader reader, final ObjectType obj)
+    private void parseObject(final Reader reader, final ObjectType obj)
             throws IOException {
-        reader.pushHandler(new DefaultHandler() {
-            @Override
-            public void beginObjectEntry(String key) throws IOException {
-                parseObjectEntry(reader, obj, key);
-            }
-            @Override
-            public void endObject() throws IOException {
-                reader.popHandler();
-            }
-        });
+        this.parseObject(reader, obj, null);
     }
 
-    private static void parseObjectEntry(final Reader reader,
-            final ObjectType obj, final String key) throws IOException {
-        reader.pushHandler(new DefaultHandler() {
-            @Override
-            public void beginObject() throws IOException {
-                ObjectType val = reader.newObjectType();
-                parseObject(reader, val);
-                obj.put(key, val);
-            }
-            @Override
-            public void beginArray() throws IOException {
-                ArrayType val = reader.newArrayType();
-                parseArray(reader, val);
-                obj.put(key, val);
-            }
-            @Override
-            public void primitive(Object val) throws IOException {
-                obj.put(key, val);
-            }
-            @Override
-            public void endObjectEntry() throws IOException {
-                reader.popHandler();
-            }
-        });
+    private void parseObject(Reader reader, ObjectType obj, Class declared)
+            throws IOException {
+        Level level = this.pushLevel();
+        if (this.directBinding) {
+            level.binder.reset(reader, obj, null, declared);
+            reader.pushHandler(level.binder);
+            return;
+        }
+        level.object.reset(reader, obj);
+        reader.pushHandler(level.object);
     }
 
-    private static void parseArray(final Reader reader, final ArrayType ary)
+    private void parseObjectEntry(Reader reader, ObjectType obj, String key)
             throws IOException {
-        reader.pushHandler(new DefaultHandler() {
-            @Override
-            public void beginObject() throws IOException {
-                ObjectType val = reader.newObjectType();
-                parseObject(reader, val);
-                ary.add(val);
-            }
-            @Override
-            public void beginArray() throws IOException {
-                ArrayType val = reader.newArrayType();
-                parseArray(reader, val);
-                ary.add(val);
-            }
-            @Override
-            public void primitive(Object val) throws IOException {
-                ary.add(val);
-            }
-            @Override
-            public void endArray() throws IOException {
-                reader.popHandler();
-            }
-        });
+        Level level = this.pushLevel();
+        level.entry.reset(reader, obj, key);
+        reader.pushHandler(level.entry);
+    }
+
+    private void parseArray(final Reader reader, final NumericArray ary)
+            throws IOException {
+        this.parseArray(reader, ary, null);
+    }
+
+    private void parseArray(Reader reader, NumericArray ary,
+            FieldBinder binding) throws IOException {
+        Level level = this.pushLevel();
+        level.array.reset(reader, ary, binding);
+        reader.pushHandler(level.array);
+    }
+
+    private Level pushLevel() {
+        if (this.depth == this.levels.length)
+            this.levels = Arrays.copyOf(this.levels, this.depth << 1);
+        Level level = this.levels[this.depth];
+        if (level == null)
+            this.levels[this.depth] = level = new Level();
+        this.depth++;
+        return level;
+    }
+
+    private void popLevel(Reader reader) {
+        reader.popHandler();
+        this.depth--;
+    }
+
+    private class Level {
+        private final ObjectHandler object = new ObjectHandler();
+        private final EntryHandler entry = new EntryHandler();
+        private final ArrayHandler array = new ArrayHandler();
+        private final ObjectBinder binder = new ObjectBinder();
+        private final FieldBinder field = new FieldBinder();
+    }
+
+    private class ObjectHandler extends DefaultHandler {
+        private Reader reader;
+        private ObjectType obj;
+
+        public void reset(Reader reader, ObjectType obj) {
+            this.reader = reader;
+            this.obj = obj;
+        }
+
+        @Override
+        public void beginObjectEntry(String key) throws IOException {
+            parseObjectEntry(this.reader, this.obj, key);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            Reader reader = this.reader;
+            this.reset(null, null);
+            popLevel(reader);
+        }
+    }
+
+    private class EntryHandler extends DefaultHandler {
+        private Reader reader;
+        private ObjectType obj;
+        private String key;
+
+        public void reset(Reader reader, ObjectType obj, String key) {
+            this.reader = reader;
+            this.obj = obj;
+            this.key = key;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            ObjectType val = this.reader.newObjectType();
+            parseObject(this.reader, val);
+            this.obj.put(this.key, val);
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            NumericArray val = new NumericArray();
+            parseArray(this.reader, val);
+            this.obj.put(this.key, val);
+        }
+
+        @Override
+        public void primitive(Object val) throws IOException {
+            if ("$id".equals(this.key))
+                registerIdentity(this.obj, val);
+            this.obj.put(this.key, val);
+        }
+
+        @Override
+        public void endObjectEntry() throws IOException {
+            Reader reader = this.reader;
+            this.reset(null, null, null);
+            popLevel(reader);
+        }
+    }
+
+    private class ArrayHandler extends DefaultHandler {
+        private Reader reader;
+        private NumericArray ary;
+        private FieldBinder binding;
+
+        public void reset(Reader reader, NumericArray ary,
+                FieldBinder binding) {
+            this.reader = reader;
+            this.ary = ary;
+            this.binding = binding;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            ObjectType val = this.reader.newObjectType();
+            parseObject(this.reader, val);
+            this.ary.add(val);
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            NumericArray val = new NumericArray();
+            parseArray(this.reader, val);
+            this.ary.add(val);
+        }
+
+        @Override
+        public void primitive(Object val) throws IOException {
+            this.ary.add(val);
+        }
+
+        @Override
+        public void intValue(int val) throws IOException {
+            this.ary.addInt(val);
+        }
+
+        @Override
+        public void longValue(long val) throws IOException {
+            this.ary.addLong(val);
+        }
+
+        @Override
+        public void doubleValue(double val) throws IOException {
+            this.ary.addDouble(val);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            Reader reader = this.reader;
+            NumericArray ary = this.ary;
+            FieldBinder binding = this.binding;
+            this.reset(null, null, null);
+            popLevel(reader);
+            if (binding != null)
+                binding.complete(ary);
+        }
     }
 
     protected Object convertParsedToJava(Target root) throws IOException {
-        Class clazz = root.isArrayType() ? Object[].class : Object.class;
+        return this.convertParsedToJava(root, Object.class);
+    }
+
+    protected Object convertParsedToJava(Target root, Class type)
+            throws IOException {
+        if (root.getTarget() != null)
+            return root.getTarget();
+        Class clazz = type;
+        if (clazz == Object.class && root.isArrayType())
+            clazz = Object[].class;
         Object target = this.getJavaInstance(clazz, root);
         root.setTarget(target);
         return this.convertTargetToJava(root);
@@ -171,7 +455,11 @@ public class Decoder {
     protected Object convertTargetToJava(Target root) throws IOException {
         LinkedList<Target> stack = new LinkedList<>();
         stack.addFirst(root);
+        this.traverse(stack);
+        return root.getTarget();
+    }
 
+    protected void traverse(LinkedList<Target> stack) throws IOException {
         while (!stack.isEmpty()) {
             Target obj = stack.removeFirst();
             if (obj.isObjectType()) {
@@ -186,12 +474,13 @@ public class Decoder {
             }
             else if (obj.isArrayType()) {
                 ArrayType aryType = (ArrayType) obj;
-                traverseArray(stack, aryType);
+                if (aryType.getTarget() instanceof Collection)
+                    traverseCollection(stack, aryType, aryType);
+                else
+                    traverseArray(stack, aryType);
                 aryType.clear();
             }
         }
-
-        return root.getTarget();
     }
 
     protected void traverseArray(LinkedList<Target> stack, ArrayType obj)
@@ -203,22 +492,24 @@ public class Decoder {
         Object target = obj.getTarget();
         Class type = target.getClass().getComponentType();
         boolean isPrimitive = Decoder.prims.isPrimitive(type);
+        if (type.isPrimitive() && obj instanceof NumericArray &&
+                ((NumericArray) obj).copyTo(target)) {
+            obj.clear();
+            return;
+        }
 
         for (int i = 0; i < size; i++) {
-            Object custom, elem = obj.get(i);
+            Object custom, ref, elem = obj.get(i);
             if (elem == null)
                 Array.set(target, i, null);
             else if (isPrimitive)
                 Array.set(target, i, Decoder.newPrimitiveWrapper(type, elem));
+            else if ((ref = this.resolveReference(elem, type, stack)) != null)
+                Array.set(target, i, ref);
             else if ((custom = readIfMatching(elem, type, stack)) != null)
                 Array.set(target, i, custom);
-            else if (elem instanceof Target) {
-                Object inst = this.getJavaInstance(type, (Target) elem);
-                ((Target)elem).setTarget(inst);
-                Array.set(target, i, inst);
-                if (!Decoder.prims.isPrimitive(inst.getClass()))
-                    stack.addFirst((Target) elem);
-            }
+            else if (elem instanceof Target)
+                Array.set(target, i, this.newTarget(type, (Target) elem, stack));
             else if (elem instanceof String && type != String.class &&
                     type != Object.class && "".equals(((String) elem).trim()))
                 Array.set(target, i, null);
@@ -233,30 +524,36 @@ public class Decoder {
         ArrayType items = obj.getItems();
         if (items == null)
             return;
+        this.traverseCollection(stack, obj, items);
+        obj.clear();
+    }
+
+    protected void traverseCollection(LinkedList<Target> stack, Target obj,
+            ArrayType items) throws IOException {
         int size = items.size();
         if (size == 0)
             return;
         Collection target = (Collection)obj.getTarget();
+        Type elemType = this.typeArgument(obj, 0);
+        Class elemClass = Decoder.rawClass(elemType);
         target.clear();
         for (int i = 0; i < size; i++) {
-            Object custom, elem = items.get(i);
+            Object custom, ref, elem = items.get(i);
             if (elem == null)
                 target.add(null);
             else if (Decoder.prims.isPrimitive(elem.getClass()))
-                target.add(Decoder.newPrimitiveWrapper(elem.getClass(), elem));
-            else if ((custom = readIfMatching(elem, null, stack)) != null)
+                target.add(Decoder.newPrimitiveWrapper(
+                        Decoder.wrapperOf(elemClass, elem), elem));
+            else if ((ref = this.resolveReference(elem, elemType,
+                    stack)) != null)
+                target.add(ref);
+            else if ((custom = readIfMatching(elem, elemClass, stack)) != null)
                 target.add(custom);
-            else if (elem instanceof Target) {
-                Object inst = this.getJavaInstance(Object.class, (Target)elem);
-                ((Target)elem).setTarget(inst);
-                target.add(inst);
-                if (!Decoder.prims.isPrimitive(inst.getClass()))
-                    stack.addFirst((Target) elem);
-            }
+            else if (elem instanceof Target)
+                target.add(this.newTarget(elemType, (Target) elem, stack));
             else
                 target.add(elem);
         }
-        obj.clear();
     }
 
     protected void traverseMap(LinkedList<Target> stack, ObjectType obj)
@@ -288,38 +585,42 @@ public class Decoder {
             }
         }
         Map target = (Map)obj.getTarget();
+        Type keyType = this.typeArgument(obj, 0);
+        Type elemType = this.typeArgument(obj, 1);
+        Class keyClass = Decoder.rawClass(keyType);
+        Class elemClass = Decoder.rawClass(elemType);
         for (int n = 0; n < props.length; n++) {
-            Object custom, prop = props[n];
+            Object custom, ref, prop = props[n];
             if (prop == null)
                 props[n] = null;
-            else if (Decoder.prims.isPrimitive(prop.getClass()))
-                props[n] = Decoder.newPrimitiveWrapper(prop.getClass(), prop);
-            else if ((custom = readIfMatching(prop, null, stack)) != null)
+            else if (Decoder.prims.isPrimitive(prop.getClass()) ||
+                    (prop instanceof String &&
+                            Decoder.prims.isPrimitive(keyClass)))
+                props[n] = Decoder.newPrimitiveWrapper(
+                        Decoder.wrapperOf(keyClass, prop), prop);
+            else if ((ref = this.resolveReference(prop, keyType,
+                    stack)) != null)
+                props[n] = ref;
+            else if ((custom = readIfMatching(prop, keyClass, stack)) != null)
                 props[n] = custom;
-            else if (prop instanceof Target) {
-                Object inst = this.getJavaInstance(Object.class, (Target)prop);
-                ((Target)prop).setTarget(inst);
-                props[n] = inst;
-                if (!Decoder.prims.isPrimitive(inst.getClass()))
-                    stack.addFirst((Target) prop);
-            }
+            else if (prop instanceof Target)
+                props[n] = this.newTarget(keyType, (Target) prop, stack);
             else
                 props[n] = prop;
             Object elem = values[n];
             if (elem == null)
                 target.put(props[n], null);
             else if (Decoder.prims.isPrimitive(elem.getClass()))
-                target.put(props[n],
-                        Decoder.newPrimitiveWrapper(elem.getClass(), elem));
-            else if ((custom = readIfMatching(elem, null, stack)) != null)
+                target.put(props[n], Decoder.newPrimitiveWrapper(
+                        Decoder.wrapperOf(elemClass, elem), elem));
+            else if ((ref = this.resolveReference(elem, elemType,
+                    stack)) != null)
+                target.put(props[n], ref);
+            else if ((custom = readIfMatching(elem, elemClass, stack)) != null)
                 target.put(props[n], custom);
-            else if (elem instanceof Target) {
-                Object inst = this.getJavaInstance(Object.class, (Target)elem);
-                ((Target)elem).setTarget(inst);
-                target.put(props[n], inst);
-                if (!Decoder.prims.isPrimitive(inst.getClass()))
-                    stack.addFirst((Target) elem);
-            }
+            else if (elem instanceof Target)
+                target.put(props[n],
+                        this.newTarget(elemType, (Target) elem, stack));
             else
                 target.put(props[n], elem);
         }
@@ -332,52 +633,168 @@ public class Decoder {
         if (custom != null)
             obj.setTarget(custom);
         else {
-            ClassMeta.Meta classInfo = Decoder.meta.getDeepDeclaredFields(
+            ClassMeta.Meta classInfo = this.meta.getDeepDeclaredFields(
                     obj.getTarget().getClass()
             );
             Iterator<Map.Entry<String, Object>> i = obj.entrySet().iterator();
             while (i.hasNext()) {
                 Map.Entry<String, Object> e = i.next();
-                Field field = classInfo.get(e.getKey());
-                if (field != null)
-                    assignField(stack, obj, field, e.getValue());
+                FieldAccessor accessor = classInfo.getAccessor(e.getKey());
+                if (accessor != null)
+                    assignField(stack, obj, accessor, e.getValue());
             }
         }
         obj.clear();
     }
 
     protected void assignField(LinkedList<Target> stack, ObjectType obj,
-            Field field, Object rhs) throws IOException {
-        Object custom, target = obj.getTarget();
+            FieldAccessor accessor, Object rhs) throws IOException {
+        this.assignValue(stack, obj.getTarget(), accessor, rhs);
+    }
+
+    protected void assignValue(LinkedList<Target> stack, Object target,
+            FieldAccessor accessor, Object rhs) throws IOException {
+        Object custom, ref;
         try {
-            Class type = field.getType();
+            Class type = accessor.getType();
             if (rhs == null)
-                field.set(target, null);
+                accessor.set(target, null);
+            else if (type.isPrimitive())
+                Decoder.assignPrimitive(target, accessor, type, rhs);
             else if (Decoder.prims.isPrimitive(type))
-                field.set(target, Decoder.newPrimitiveWrapper(type, rhs));
+                accessor.set(target, Decoder.newPrimitiveWrapper(type, rhs));
+            else if ((ref = this.resolveReference(rhs,
+                    accessor.getGenericType(), stack)) != null)
+                accessor.set(target, ref);
             else if ((custom = readIfMatching(rhs, type, stack)) != null)
-                field.set(target, custom);
-            else if (rhs instanceof Target) {
-                Object inst = this.getJavaInstance(Object.class, (Target) rhs);
-                ((Target)rhs).setTarget(inst);
-                field.set(target, inst);
-                if (!Decoder.prims.isPrimitive(rhs.getClass()))
-                    stack.addFirst((Target) rhs);
-            }
+                accessor.set(target, custom);
+            else if (rhs instanceof Target)
+                accessor.set(target, this.newTarget(
+                        accessor.getGenericType(), (Target) rhs, stack));
             else if (rhs instanceof String && type != String.class &&
                     type != Object.class && "".equals(((String) rhs).trim()))
-                field.set(target, null);
+                accessor.set(target, null);
             else
-                field.set(target, rhs);
+                accessor.set(target, rhs);
         } catch (Exception ex) {
             throw new IOException(
                 ex.getClass().getSimpleName() + " setting field '" +
-                field.getName() + "' on target: " + target + " with value: " +
-                rhs, ex
+                accessor.getName() + "' on target: " + target +
+                " with value: " + rhs, ex
             );
         }
     }
 
+    private static void assignPrimitive(Object target, FieldAccessor accessor,
+            Class type, Object rhs) throws IOException {
+        if (rhs instanceof Number) {
+            Number value = (Number) rhs;
+            if (type == int.class) {
+                accessor.setInt(target, value.intValue());
+                return;
+            }
+            if (type == long.class) {
+                accessor.setLong(target, value.longValue());
+                return;
+            }
+            if (type == double.class) {
+                accessor.setDouble(target, value.doubleValue());
+                return;
+            }
+            if (type == float.class) {
+                accessor.setFloat(target, value.floatValue());
+                return;
+            }
+            if (type == short.class) {
+                accessor.setShort(target, value.shortValue());
+                return;
+            }
+            if (type == byte.class) {
+                accessor.setByte(target, value.byteValue());
+                return;
+            }
+        }
+        else if (rhs instanceof Boolean && type == boolean.class) {
+            accessor.setBoolean(target, (Boolean) rhs);
+            return;
+        }
+        accessor.set(target, Decoder.newPrimitiveWrapper(type, rhs));
+    }
+
+    protected Object newTarget(Type type, Target obj,
+            LinkedList<Target> stack) throws IOException {
+        if (type instanceof ParameterizedType && obj.getTarget() == null)
+            this.declaredTypes.put(obj, type);
+        return this.newTarget(Decoder.rawClass(type), obj, stack);
+    }
+
+    protected Object newTarget(Class clazz, Target obj,
+            LinkedList<Target> stack) throws IOException {
+        Object inst = obj.getTarget();
+        if (inst != null)
+            return inst;
+        inst = this.getJavaInstance(clazz, obj);
+        obj.setTarget(inst);
+        if (!Decoder.prims.isPrimitive(inst.getClass()))
+            stack.addFirst(obj);
+        return inst;
+    }
+
+    private Type typeArgument(Target obj, int index) {
+        if (this.declaredTypes.isEmpty())
+            return Object.class;
+        Type type = this.declaredTypes.get(obj);
+        if (! (type instanceof ParameterizedType))
+            return Object.class;
+        Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+        return index < args.length ? args[index] : Object.class;
+    }
+
+    private static Class rawClass(Type type) {
+        if (type instanceof Class)
+            return (Class) type;
+        if (type instanceof ParameterizedType)
+            return Decoder.rawClass(((ParameterizedType) type).getRawType());
+        if (type instanceof GenericArrayType)
+            return Array.newInstance(Decoder.rawClass(((GenericArrayType) type)
+                    .getGenericComponentType()), 0).getClass();
+        if (type instanceof WildcardType)
+            return Decoder.rawClass(((WildcardType) type).getUpperBounds()[0]);
+        return Object.class;
+    }
+
+    private static Class wrapperOf(Class declared, Object value) {
+        if (Decoder.prims.isPrimitive(declared))
+            return declared;
+        return value.getClass();
+    }
+
+    protected Object resolveReference(Object obj, Type type,
+            LinkedList<Target> stack) throws IOException {
+        if (this.identityCount == 0 || !(obj instanceof Target))
+            return null;
+        if (! ((Target) obj).isObjectType())
+            return null;
+        Object ref = ((ObjectType) obj).get("$ref");
+        if (ref == null)
+            return null;
+        int id = ref instanceof Number ? ((Number) ref).intValue() : 0;
+        if (id < 1 || id > this.identityCount)
+            throw new IOException("Unresolved reference: " + ref);
+        return this.newTarget(type, this.identities[id - 1], stack);
+    }
+
+    private void registerIdentity(ObjectType obj, Object val)
+            throws IOException {
+        int id = val instanceof Number ? ((Number) val).intValue() : 0;
+        if (id != this.identityCount + 1)
+            throw new IOException("Unexpected identity: " + val);
+        if (this.identityCount == this.identities.length)
+            this.identities = Arrays.copyOf(
+                    this.identities, this.identityCount * 2);
+        this.identities[this.identityCount++] = obj;
+    }
+
     protected Object readIfMatching(Object obj, Class type,
             LinkedList<Target> stack) throws IOException {
         if (! (obj instanceof Target))
@@ -390,7 +807,7 @@ public class Decoder {
         else {
             String typeStr = ((ObjectType) obj).getType();
             if (typeStr != null)
-                componentClass = Decoder.classForName(typeStr);
+                componentClass = this.resolveClass(typeStr);
             else if (type != null)
                 componentClass = type;
             else
@@ -406,21 +823,49 @@ public class Decoder {
     protected Object getJavaInstance(Class clazz, Target obj)
             throws IOException {
         if (obj.isObjectType()) {
-            Class c = Decoder.classForName(((ObjectType)obj).getType());
+            String type = ((ObjectType)obj).getType();
+            Class c = type != null ? this.resolveClass(type) :
+                    Decoder.implementationOf(clazz, (ObjectType)obj);
             if (Decoder.prims.isPrimitive(c))
                 return newPrimitiveWrapper(c, ((ObjectType)obj).get("value"));
             if (c.isEnum())
                 return Decoder.getEnum(c, (ObjectType)obj);
             if (Enum.class.isAssignableFrom(c))
                 return Decoder.getEnum(c.getSuperclass(), (ObjectType)obj);
-            return this.newInstance(c);
+            return this.instantiate(c);
         }
+        if (Collection.class.isAssignableFrom(clazz))
+            return this.instantiate(Decoder.implementationOf(clazz, null));
         return Array.newInstance(
                 clazz.isArray() ? clazz.getComponentType() : Object.class,
                 ((ArrayType)obj).size()
         );
     }
 
+    private static Class implementationOf(Class c, ObjectType obj)
+            throws IOException {
+        if (c == Object.class)
+            return obj.get("$items") != null && obj.get("$keys") == null ?
+                    ArrayList.class : LinkedHashMap.class;
+        if (c.isPrimitive() || c.isEnum())
+            return c;
+        if (!c.isInterface() && !Modifier.isAbstract(c.getModifiers()))
+            return c;
+        if (SortedSet.class.isAssignableFrom(c))
+            return TreeSet.class;
+        if (Set.class.isAssignableFrom(c))
+            return LinkedHashSet.class;
+        if (Collection.class.isAssignableFrom(c))
+            return ArrayList.class;
+        if (SortedMap.class.isAssignableFrom(c))
+            return TreeMap.class;
+        if (Map.class.isAssignableFrom(c))
+            return LinkedHashMap.class;
+        throw new IOException(
+            "Cannot instantiate '" + c.getName() + "' without $type"
+        );
+    }
+
     private static Object getEnum(Class c, ObjectType obj) {
         try {
             return Enum.valueOf(c, (String) obj.get("name"));
@@ -431,45 +876,77 @@ public class Decoder {
 
     public static Class classForName(String name) throws IOException
     {
+        return Decoder.classForName(name,
+                Thread.currentThread().getContextClassLoader());
+    }
+
+    public static Class classForName(String name, ClassLoader loader)
+            throws IOException {
         if (name == null || name.isEmpty())
             throw new IOException("Invalid class name specified");
+        Class c = Decoder.nameToClass.get(name);
+        if (c != null)
+            return c;
+        return Decoder.loadClass(Decoder.classCacheOf(loader), name, loader);
+    }
+
+    protected Class resolveClass(String name) throws IOException {
+        if (name == null || name.isEmpty())
+            throw new IOException("Invalid class name specified");
+        Class c = Decoder.nameToClass.get(name);
+        if (c != null)
+            return c;
+        if (this.classFilter != null &&
+                !Boolean.TRUE.equals(this.classFilter.call(name)))
+            throw new IOException("Class '" + name + "' is not allowed");
+        ClassLoader loader = this.classLoader != null ? this.classLoader :
+                Thread.currentThread().getContextClassLoader();
+        if (this.classCache == null)
+            this.classCache = Decoder.classCacheOf(loader);
+        return Decoder.loadClass(this.classCache, name, loader);
+    }
+
+    private static ClassCache classCacheOf(ClassLoader loader) {
+        synchronized (Decoder.classCaches) {
+            ClassCache cache = Decoder.classCaches.get(loader);
+            if (cache == null)
+                Decoder.classCaches.put(loader, cache = new ClassCache());
+            return cache;
+        }
+    }
+
+    private static Class loadClass(ClassCache cache, String name,
+            ClassLoader loader) throws IOException {
+        Object c = cache.classes.get(name);
+        if (c == Decoder.unknownClass)
+            throw new IOException(
+                "Class instance '" + name + "' could not be created"
+            );
+        if (c != null && (c = ((WeakReference<?>) c).get()) != null)
+            return (Class) c;
         try {
-            Class c = Decoder.nameToClass.get(name);
-            return c == null ? Decoder.loadClass(name) : c;
-        } catch (ClassNotFoundException ex) {
+            c = Class.forName(name, false, loader);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            int unknown = cache.unknown.incrementAndGet();
+            if (unknown <= Decoder.maxUnknownClasses)
+                cache.classes.putIfAbsent(name, Decoder.unknownClass);
             throw new IOException(
                 "Class instance '" + name + "' could not be created", ex
             );
         }
+        cache.classes.put(name, new WeakReference<>(c));
+        return (Class) c;
     }
 
     public static Object newInstance(Class c) throws IOException {
-        Object[] constructorInfo = Decoder.constructors.get(c);
-        if (constructorInfo != null) {
-            Constructor ctor = (Constructor) constructorInfo[0];
-            Boolean useNull = (Boolean) constructorInfo[1];
-            Class[] paramTypes = ctor.getParameterTypes();
-            if (paramTypes == null || paramTypes.length == 0) {
-                try {
-                    return ctor.newInstance();
-                } catch (Exception ex) {
-                    throw new IOException(
-                        "Could not instantiate " + c.getName(), ex
-                    );
-                }
-            }
-            Object[] values = Decoder.fillArgs(paramTypes, useNull);
-            try {
-                return ctor.newInstance(values);
-            } catch (Exception ex) {
-                throw new IOException(
-                    "Could not instantiate " + c.getName(), ex
-                );
-            }
-        }
-        Object[] ret = Decoder.newInstanceEx(c);
-        Decoder.constructors.put(c, new Object[] {ret[1], ret[2]});
-        return ret[0];
+        return Decoder.constructors.get(c).newInstance();
+    }
+
+    protected Object instantiate(Class c) throws IOException {
+        Instantiator instantiator = Decoder.constructors.get(c);
+        if (this.allocator != null && !instantiator.isDefault())
+            return this.allocator.allocate(c);
+        return instantiator.newInstance();
     }
 
     private static Object[] newInstanceEx(Class c) throws IOException
@@ -603,6 +1080,9 @@ public class Decoder {
                     rhs = "0";
                 return Long.parseLong((String)rhs);
             }
+            if (c != Number.class && rhs instanceof Number &&
+                    !(rhs instanceof Long))
+                return ((Number) rhs).longValue();
             return rhs != null ? rhs : 0L;
         }
         if (c == Short.class || c == short.class) {
@@ -619,6 +1099,8 @@ public class Decoder {
                     rhs = "0.0";
                 return Double.parseDouble((String)rhs);
             }
+            if (rhs instanceof Number && !(rhs instanceof Double))
+                return ((Number) rhs).doubleValue();
             return rhs != null ? rhs : 0.0d;
         }
         if (c == Float.class || c == float.class) {
@@ -646,14 +1128,305 @@ public class Decoder {
         );
     }
 
-    private static Class loadClass(String name) throws ClassNotFoundException {
-        return Thread.currentThread().getContextClassLoader().loadClass(name);
-    }
-
     private static Character valueOf(char c) {
         return c <= 127 ? Decoder.charCache[(int) c] : c;
     }
 
+    private boolean isBindable(Class c) {
+        if (Decoder.prims.isPrimitive(c) || c.isArray() || c.isInterface())
+            return false;
+        if (Enum.class.isAssignableFrom(c))
+            return false;
+        if (Collection.class.isAssignableFrom(c) ||
+                Map.class.isAssignableFrom(c))
+            return false;
+        if (Modifier.isAbstract(c.getModifiers()))
+            return false;
+        return this.readers.getClosestReader(c) == null;
+    }
+
+    private class ObjectBinder extends DefaultHandler {
+        private Reader reader;
+        private ObjectType node;
+        private FieldBinder binding;
+        private Class declared;
+        private ClassMeta.Meta classInfo = null;
+        private boolean decided = false;
+        private final List<FieldAccessor> bound = new ArrayList<>();
+
+        public void reset(Reader reader, ObjectType node,
+                FieldBinder binding, Class declared) {
+            this.reader = reader;
+            this.node = node;
+            this.binding = binding;
+            this.declared = declared;
+            this.classInfo = null;
+            this.decided = false;
+            this.bound.clear();
+        }
+
+        @Override
+        public void beginObjectEntry(String key) throws IOException {
+            if (!this.decided && !"$type".equals(key))
+                this.bind(key);
+            else if (this.classInfo != null && "$type".equals(key)) {
+                this.reader.pushHandler(new DefaultHandler() {
+                    @Override
+                    public void primitive(Object val) throws IOException {
+                        lateType(val);
+                    }
+                    @Override
+                    public void endObjectEntry() throws IOException {
+                        reader.popHandler();
+                    }
+                });
+                return;
+            }
+            FieldAccessor accessor = this.classInfo != null ?
+                    this.classInfo.getAccessor(key) : null;
+            if (accessor != null) {
+                this.bound.add(accessor);
+                FieldBinder field = pushLevel().field;
+                field.reset(this.reader, this.node, accessor);
+                this.reader.pushHandler(field);
+            }
+            else
+                parseObjectEntry(this.reader, this.node, key);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            if (! this.decided)
+                this.bind(null);
+            Reader reader = this.reader;
+            ObjectType node = this.node;
+            FieldBinder binding = this.binding;
+            this.reset(null, null, null, null);
+            popLevel(reader);
+            if (binding != null)
+                binding.complete(node);
+        }
+
+        private void lateType(Object val) throws IOException {
+            Object target = this.node.getTarget();
+            if (val instanceof String &&
+                    resolveClass((String) val) == target.getClass()) {
+                this.node.put("$type", val);
+                return;
+            }
+            for (FieldAccessor accessor : this.bound)
+                this.node.put(accessor.getName(), accessor.get(target));
+            this.bound.clear();
+            this.classInfo = null;
+            this.node.setTarget(null);
+            this.node.put("$type", val);
+        }
+
+        private void bind(String key) throws IOException {
+            this.decided = true;
+            if ("$ref".equals(key))
+                return;
+            String type = this.node.getType();
+            Class c = type != null ? resolveClass(type) : this.declared;
+            if (c == null || c == Object.class || !isBindable(c))
+                return;
+            this.node.setTarget(instantiate(c));
+            this.classInfo = Decoder.this.meta.getDeepDeclaredFields(c);
+        }
+    }
+
+    private class FieldBinder extends DefaultHandler {
+        private Reader reader;
+        private ObjectType node;
+        private FieldAccessor accessor;
+
+        public void reset(Reader reader, ObjectType node,
+                FieldAccessor accessor) {
+            this.reader = reader;
+            this.node = node;
+            this.accessor = accessor;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            ObjectBinder binder = pushLevel().binder;
+            binder.reset(this.reader, this.reader.newObjectType(), this,
+                    this.accessor.getType());
+            this.reader.pushHandler(binder);
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            parseArray(this.reader, new NumericArray(), this);
+        }
+
+        @Override
+        public void primitive(Object val) throws IOException {
+            this.complete(val);
+        }
+
+        @Override
+        public void booleanValue(boolean val) throws IOException {
+            if (this.accessor.getType() == boolean.class)
+                this.accessor.setBoolean(this.node.getTarget(), val);
+            else
+                this.primitive(val);
+        }
+
+        @Override
+        public void intValue(int val) throws IOException {
+            if (!this.assignNumber(val))
+                this.primitive(val);
+        }
+
+        @Override
+        public void longValue(long val) throws IOException {
+            if (!this.assignNumber(val))
+                this.primitive(val);
+        }
+
+        @Override
+        public void doubleValue(double val) throws IOException {
+            if (this.accessor.getType() == double.class)
+                this.accessor.setDouble(this.node.getTarget(), val);
+            else if (this.accessor.getType() == float.class)
+                this.accessor.setFloat(this.node.getTarget(), (float) val);
+            else
+                this.primitive(val);
+        }
+
+        @Override
+        public void endObjectEntry() throws IOException {
+            Reader reader = this.reader;
+            this.reset(null, null, null);
+            popLevel(reader);
+        }
+
+        private boolean assignNumber(long val) {
+            Class type = this.accessor.getType();
+            Object target = this.node.getTarget();
+            if (type == int.class)
+                this.accessor.setInt(target, (int) val);
+            else if (type == long.class)
+                this.accessor.setLong(target, val);
+            else if (type == double.class)
+                this.accessor.setDouble(target, val);
+            else if (type == float.class)
+                this.accessor.setFloat(target, val);
+            else if (type == short.class)
+                this.accessor.setShort(target, (short) val);
+            else if (type == byte.class)
+                this.accessor.setByte(target, (byte) val);
+            else
+                return false;
+            return true;
+        }
+
+        public void complete(Object rhs) throws IOException {
+            LinkedList<Target> stack = Decoder.this.bindStack;
+            assignValue(stack, this.node.getTarget(), this.accessor, rhs);
+            traverse(stack);
+        }
+    }
+
+    private static class Instantiator {
+        private final Class type;
+        private final boolean hasDefault;
+        private volatile Factory factory = null;
+
+        public Instantiator(Class type) {
+            this.type = type;
+            boolean found;
+            try {
+                type.getConstructor(Decoder.emptyClassArray);
+                found = true;
+            } catch (NoSuchMethodException | SecurityException ex) {
+                found = false;
+            }
+            this.hasDefault = found;
+        }
+
+        public boolean isDefault() {
+            return this.hasDefault;
+        }
+
+        public Object newInstance() throws IOException {
+            Factory f = this.factory;
+            if (f != null)
+                return f.newInstance();
+            Object[] ret = Decoder.newInstanceEx(this.type);
+            this.factory = new Factory((Constructor) ret[1], (Boolean) ret[2]);
+            return ret[0];
+        }
+    }
+
+    private static class Factory {
+        private static final MethodHandles.Lookup lookup =
+                MethodHandles.lookup();
+
+        private final Constructor ctor;
+        private final Class[] paramTypes;
+        private final boolean useNull;
+        private final Object[] args;
+        private final MethodHandle handle;
+
+        public Factory(Constructor ctor, boolean useNull) {
+            this.ctor = ctor;
+            this.paramTypes = ctor.getParameterTypes();
+            this.useNull = useNull;
+            Object[] values = null;
+            if (this.paramTypes.length > 0) {
+                try {
+                    values = Decoder.fillArgs(this.paramTypes, useNull);
+                    if (! Factory.isImmutable(values))
+                        values = null;
+                } catch (IOException ex) {
+                    values = null;
+                }
+            }
+            this.args = values;
+            MethodHandle mh;
+            try {
+                mh = Factory.lookup.unreflectConstructor(ctor);
+                mh = mh.asSpreader(Object[].class, this.paramTypes.length)
+                        .asType(MethodType.methodType(
+                                Object.class, Object[].class));
+            } catch (IllegalAccessException ex) {
+                mh = null;
+            }
+            this.handle = mh;
+        }
+
+        public Object newInstance() throws IOException {
+            Object[] values = this.args;
+            if (values == null && this.paramTypes.length > 0)
+                values = Decoder.fillArgs(this.paramTypes, this.useNull);
+            try {
+                if (this.handle != null)
+                    return (Object) this.handle.invokeExact(values);
+                return this.ctor.newInstance(values);
+            } catch (Throwable t) {
+                if (t instanceof Error)
+                    throw (Error) t;
+                throw new IOException("Could not instantiate " +
+                        this.ctor.getDeclaringClass().getName(), t);
+            }
+        }
+
+        private static boolean isImmutable(Object[] values) {
+            for (Object value : values) {
+                if (value == null || value instanceof String ||
+                        value instanceof BigInteger ||
+                        value instanceof BigDecimal ||
+                        value instanceof Locale || value instanceof Class)
+                    continue;
+                if (! Decoder.prims.isPrimitive(value.getClass()))
+                    return false;
+            }
+            return true;
+        }
+    }
+
     private static class DefaultHandler implements Reader.ContentHandler {
         @Override
         public void begin() throws IOException {
@@ -2,8 +2,6 @@ package org.mogware.system.dif;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -13,72 +11,120 @@ public class Encoder {
 
     private final ClassWriters writers = new ClassWriters();
 
+    private boolean references = false;
+    private boolean omitDeclaredTypes = false;
+    private IdentityIntMap identities = null;
+    private ClassMeta meta = ClassMeta.getDefault();
+
     private static final Primitives prims = new Primitives();
-    private static final ClassMeta meta = new ClassMeta();
 
     public Encoder() {
         this.publicEnumsOnly = false;
     }
 
+    public final void setReferences(boolean references) {
+        this.references = references;
+    }
+
+    public final void setOmitDeclaredTypes(boolean omitDeclaredTypes) {
+        this.omitDeclaredTypes = omitDeclaredTypes;
+    }
+
+    public final void setClassMeta(ClassMeta meta) {
+        if (meta == null)
+            throw new NullPointerException("meta is null");
+        this.meta = meta;
+    }
+
     public void encode(Writer writer, Object value) throws IOException {
-        this.writeImpl(writer, value);
+        this.encode(writer, value, null);
+    }
+
+    public void encode(Writer writer, Object value, Class type)
+            throws IOException {
+        if (this.references)
+            this.identities = new IdentityIntMap();
+        try {
+            if (value != null && value.getClass() == type)
+                this.writeImpl(writer, value, this.showType(true));
+            else
+                this.writeImpl(writer, value);
+        } finally {
+            this.identities = null;
+        }
+    }
+
+    public void encodeAll(JsonWriter writer, Iterator<?> values)
+            throws IOException {
+        this.encodeAll(writer, values, null);
+    }
+
+    public void encodeAll(JsonWriter writer, Iterator<?> values, Class type)
+            throws IOException {
+        while (values.hasNext()) {
+            this.encode(writer, values.next(), type);
+            writer.endRecord();
+        }
     }
 
     private void writeImpl(Writer out, Object obj)
             throws IOException {
+        this.writeImpl(out, obj, true);
+    }
+
+    private void writeImpl(Writer out, Object obj, boolean showType)
+            throws IOException {
         if (obj == null)
             out.nullValue();
         else if (obj.getClass().isArray())
             this.writeArray(out, obj);
         else if (obj instanceof Collection)
-            this.writeCollection(out, (Collection) obj);
+            this.writeCollection(out, (Collection) obj, showType);
         else if (obj instanceof Map) {
-            if(! this.writeMapWithStringKeys(out, (Map) obj))
-                this.writeMap(out, (Map) obj);
+            if(! this.writeMapWithStringKeys(out, (Map) obj, showType))
+                this.writeMap(out, (Map) obj, showType);
         }
         else if (! writeIfMatching(out, true, obj))
-            this.writeObject(out, obj);
+            this.writeObject(out, obj, showType);
+    }
+
+    private boolean showType(boolean declared) {
+        return !(declared && this.omitDeclaredTypes);
     }
 
     private void writeArray(Writer out, Object array)
             throws IOException {
         Class arrayType = array.getClass();
         int len = Array.getLength(array);
-        out.beginArray();
         if (byte[].class == arrayType) {
-            byte[] bytes = (byte[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(bytes[i]);
+            out.values((byte[]) array, 0, len);
+            return;
         }
-        else if (char[].class == arrayType) {
-            char[] chars = (char[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(chars[i]);
+        if (short[].class == arrayType) {
+            out.values((short[]) array, 0, len);
+            return;
         }
-        else if (short[].class == arrayType) {
-            short[] shorts = (short[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(shorts[i]);
+        if (int[].class == arrayType) {
+            out.values((int[]) array, 0, len);
+            return;
         }
-        else if (int[].class == arrayType) {
-            int[] ints = (int[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(ints[i]);
+        if (long[].class == arrayType) {
+            out.values((long[]) array, 0, len);
+            return;
         }
-        else if (long[].class == arrayType) {
-            long[] longs = (long[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(longs[i]);
+        if (float[].class == arrayType) {
+            out.values((float[]) array, 0, len);
+            return;
         }
-        else if (float[].class == arrayType) {
-            float[] floats = (float[]) array;
-            for (int i = 0; i < len; i++)
-                out.value(floats[i]);
+        if (double[].class == arrayType) {
+            out.values((double[]) array, 0, len);
+            return;
         }
-        else if (double[].class == arrayType) {
-            double[] doubles = (double[]) array;
+        out.beginArray();
+        if (char[].class == arrayType) {
+            char[] chars = (char[]) array;
             for (int i = 0; i < len; i++)
-                out.value(doubles[i]);
+                out.value(chars[i]);
         }
         else if (boolean[].class == arrayType) {
             boolean[] bools = (boolean[]) array;
@@ -112,9 +158,9 @@ public class Encoder {
         out.endArray();
     }
 
-    private void writeCollection(Writer out, Collection col)
-            throws IOException {
-        out.beginList(col.getClass());
+    private void writeCollection(Writer out, Collection col,
+            boolean showType) throws IOException {
+        out.beginList(showType ? col.getClass() : null);
         Iterator i = col.iterator();
         while (i.hasNext()) {
             this.writeElement(out, i.next());
@@ -122,11 +168,11 @@ public class Encoder {
         out.endList();
     }
 
-    private boolean writeMapWithStringKeys(Writer out, Map map)
-            throws IOException {
+    private boolean writeMapWithStringKeys(Writer out, Map map,
+            boolean showType) throws IOException {
         if (! Encoder.ensureStringKeys(map))
             return false;
-        out.beginMap(map.getClass());
+        out.beginMap(showType ? map.getClass() : null);
         Iterator i = map.entrySet().iterator();
         while (i.hasNext()) {
             final Map.Entry entry = (Map.Entry) i.next();
@@ -145,8 +191,9 @@ public class Encoder {
         return true;
     }
 
-    private void writeMap(Writer out, Map map) throws IOException {
-        out.beginMap(map.getClass());
+    private void writeMap(Writer out, Map map, boolean showType)
+            throws IOException {
+        out.beginMap(showType ? map.getClass() : null);
 
         out.beginKeys();
         Iterator i = map.keySet().iterator();
@@ -165,45 +212,83 @@ public class Encoder {
         out.endMap();
     }
 
-    private void writeObject(Writer out, Object obj)
+    private void writeObject(Writer out, Object obj, boolean showType)
             throws IOException {
-        out.beginObject(obj.getClass());
-        ClassMeta.Meta classInfo =
-                Encoder.meta.getDeepDeclaredFields(obj.getClass());
-        for (Map.Entry<String, Field> entry : classInfo.entrySet()) {
-            String fieldName = entry.getKey();
-            Field field = entry.getValue();
-            this.writeField(out, obj, fieldName, field);
+        int id = 0;
+        if (this.identities != null) {
+            int ref = this.identities.get(obj);
+            if (ref > 0) {
+                out.reference(ref);
+                return;
+            }
+            id = this.identities.size() + 1;
+            this.identities.put(obj, id);
+        }
+        out.beginObject(showType ? obj.getClass() : null);
+        if (id > 0)
+            out.propertyName("$id").value(id);
+        ClassMeta.WritePlan plan = this.meta.getWritePlan(obj.getClass());
+        for (ClassMeta.Property property : plan.getProperties()) {
+            if (property.hiddenEnum && this.publicEnumsOnly)
+                continue;
+            this.writeProperty(out, obj, property);
         }
         out.endObject();
     }
 
-    private void writeField(Writer out, Object obj, String fieldName,
-            Field field) throws IOException {
-        int modifiers = field.getModifiers();
-        if ((modifiers & Modifier.TRANSIENT) != 0)
-            return;
-        if (field.getDeclaringClass().isEnum() &&
-                !Modifier.isPublic(modifiers) && this.publicEnumsOnly)
-            return;
-
-        out.propertyName(fieldName);
-
-        Object o;
-        try {
-            o = field.get(obj);
-        } catch (Exception ex) {
-            o = null;
-        }
-        if (o == null)
+    private void writeProperty(Writer out, Object obj,
+            ClassMeta.Property property) throws IOException {
+        FieldAccessor accessor = property.accessor;
+        out.propertyName(property.name);
+        switch (property.kind) {
+        case BOOLEAN:
+            out.value(accessor.getBoolean(obj));
+            break;
+        case BYTE:
+            out.value(accessor.getByte(obj));
+            break;
+        case CHAR:
+            out.value(accessor.getChar(obj));
+            break;
+        case SHORT:
+            out.value(accessor.getShort(obj));
+            break;
+        case INT:
+            out.value(accessor.getInt(obj));
+            break;
+        case LONG:
+            out.value(accessor.getLong(obj));
+            break;
+        case FLOAT:
+            out.value(accessor.getFloat(obj));
+            break;
+        case DOUBLE:
+            out.value(accessor.getDouble(obj));
+            break;
+        case BOXED:
+            {
+                Object o = accessor.get(obj);
+                if (o == null)
+                    out.nullValue();
+                else
+                    this.writePrimitive(out, o);
+            }
+            break;
+        case OBJECT:
+            {
+                Object o = accessor.get(obj);
+                if (o == null)
+                    out.nullValue();
+                else {
+                    boolean declared = o.getClass() == property.type;
+                    if (! this.writeIfMatching(out, !declared, o))
+                        this.writeImpl(out, o, this.showType(declared));
+                }
+            }
+            break;
+        default:
             out.nullValue();
-        else {
-            Class type = field.getType();
-            boolean forceType = o.getClass() != type;
-            if (Encoder.prims.isPrimitive(type))
-                this.writePrimitive(out, o);
-            else if (! this.writeIfMatching(out, forceType, o))
-                this.writeImpl(out, o);
+            break;
         }
     }
 
@@ -0,0 +1,276 @@
+package org.mogware.system.dif;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+
+public class FieldAccessor {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final String name;
+    private final Field field;
+    private final Class type;
+    private final MethodHandle getter;
+    private final MethodHandle boxedGetter;
+    private final MethodHandle setter;
+    private final MethodHandle boxedSetter;
+
+    public FieldAccessor(String name, Field field) {
+        this.name = name;
+        this.field = field;
+        this.type = field.getType();
+        MethodHandle mh;
+        try {
+            mh = FieldAccessor.lookup.unreflectGetter(field);
+        } catch (IllegalAccessException ex) {
+            mh = null;
+        }
+        if (mh == null) {
+            this.getter = null;
+            this.boxedGetter = null;
+        }
+        else {
+            Class ret = this.type.isPrimitive() ? this.type : Object.class;
+            this.getter = mh.asType(
+                    MethodType.methodType(ret, Object.class));
+            this.boxedGetter = mh.asType(
+                    MethodType.methodType(Object.class, Object.class));
+        }
+        try {
+            mh = FieldAccessor.lookup.unreflectSetter(field);
+        } catch (IllegalAccessException ex) {
+            mh = null;
+        }
+        if (mh == null) {
+            this.setter = null;
+            this.boxedSetter = null;
+        }
+        else {
+            Class arg = this.type.isPrimitive() ? this.type : Object.class;
+            this.setter = mh.asType(
+                    MethodType.methodType(void.class, Object.class, arg));
+            this.boxedSetter = mh.asType(
+                    MethodType.methodType(void.class, Object.class,
+                            Object.class));
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public Field getField() {
+        return this.field;
+    }
+
+    public Class getType() {
+        return this.type;
+    }
+
+    public Type getGenericType() {
+        return this.field.getGenericType();
+    }
+
+    public boolean isAccessible() {
+        return this.getter != null;
+    }
+
+    public Object get(Object obj) {
+        try {
+            return (Object) this.boxedGetter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public boolean getBoolean(Object obj) {
+        try {
+            return (boolean) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public byte getByte(Object obj) {
+        try {
+            return (byte) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public char getChar(Object obj) {
+        try {
+            return (char) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public short getShort(Object obj) {
+        try {
+            return (short) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public int getInt(Object obj) {
+        try {
+            return (int) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public long getLong(Object obj) {
+        try {
+            return (long) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public float getFloat(Object obj) {
+        try {
+            return (float) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public double getDouble(Object obj) {
+        try {
+            return (double) this.getter.invokeExact(obj);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void set(Object obj, Object value) {
+        if (this.boxedSetter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.boxedSetter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setBoolean(Object obj, boolean value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setByte(Object obj, byte value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setChar(Object obj, char value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setShort(Object obj, short value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setInt(Object obj, int value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setLong(Object obj, long value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setFloat(Object obj, float value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    public void setDouble(Object obj, double value) {
+        if (this.setter == null) {
+            this.reflectiveSet(obj, value);
+            return;
+        }
+        try {
+            this.setter.invokeExact(obj, value);
+        } catch (Throwable t) {
+            throw this.accessFailed(t);
+        }
+    }
+
+    private void reflectiveSet(Object obj, Object value) {
+        try {
+            this.field.set(obj, value);
+        } catch (IllegalAccessException ex) {
+            throw this.accessFailed(ex);
+        }
+    }
+
+    private RuntimeException accessFailed(Throwable t) {
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t instanceof RuntimeException)
+            return (RuntimeException) t;
+        return new IllegalStateException(
+                "Unable to access field '" + this.name + "'", t);
+    }
+}
@@ -0,0 +1,126 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.mogware.system.dif.Reader.ContentHandler;
+
+class HandlerStack {
+    private ContentHandler[] handlers = new ContentHandler[16];
+    private int size = 0;
+    private ContentHandler current = null;
+    private boolean[] objects = new boolean[32];
+    private int depth = 0;
+
+    public void push(ContentHandler handler) {
+        if (this.size == this.handlers.length)
+            this.handlers = Arrays.copyOf(this.handlers, this.size << 1);
+        this.handlers[this.size++] = this.current;
+        this.current = handler;
+    }
+
+    public void pop() {
+        if (this.size == 0)
+            throw new IllegalStateException("Handler stack is empty");
+        this.current = this.handlers[--this.size];
+        this.handlers[this.size] = null;
+    }
+
+    public void parse(TokenReader tokens) throws IOException {
+        this.depth = 0;
+        if (this.current != null)
+            this.current.begin();
+        TokenReader.Token token;
+        while ((token = tokens.nextToken()) != TokenReader.Token.END_DOCUMENT) {
+            if (this.dispatch(this.current, tokens, token) &&
+                    this.depth > 0 && this.objects[this.depth - 1] &&
+                    this.current != null)
+                this.current.endObjectEntry();
+        }
+        if (this.current != null)
+            this.current.end();
+    }
+
+    public boolean parseValue(TokenReader tokens) throws IOException {
+        this.depth = 0;
+        TokenReader.Token token = tokens.nextToken();
+        if (token == TokenReader.Token.END_DOCUMENT)
+            return false;
+        if (this.current != null)
+            this.current.begin();
+        do {
+            if (this.dispatch(this.current, tokens, token) &&
+                    this.depth > 0 && this.objects[this.depth - 1] &&
+                    this.current != null)
+                this.current.endObjectEntry();
+        } while (this.depth > 0 &&
+                (token = tokens.nextToken()) != TokenReader.Token.END_DOCUMENT);
+        if (this.current != null)
+            this.current.end();
+        return true;
+    }
+
+    private boolean dispatch(ContentHandler ch, TokenReader tokens,
+            TokenReader.Token token) throws IOException {
+        switch (token) {
+        case BEGIN_OBJECT:
+            this.open(true);
+            if (ch != null)
+                ch.beginObject();
+            return false;
+        case BEGIN_ARRAY:
+            this.open(false);
+            if (ch != null)
+                ch.beginArray();
+            return false;
+        case NAME:
+            if (ch != null)
+                ch.beginObjectEntry(tokens.currentName());
+            return false;
+        case END_OBJECT:
+            this.depth--;
+            if (ch != null)
+                ch.endObject();
+            return true;
+        case END_ARRAY:
+            this.depth--;
+            if (ch != null)
+                ch.endArray();
+            return true;
+        }
+        if (ch == null)
+            return true;
+        switch (token) {
+        case NULL:
+            ch.nullValue();
+            break;
+        case BOOLEAN:
+            ch.booleanValue(tokens.booleanValue());
+            break;
+        case INT:
+            ch.intValue(tokens.intValue());
+            break;
+        case LONG:
+            ch.longValue(tokens.longValue());
+            break;
+        case DOUBLE:
+            ch.doubleValue(tokens.doubleValue());
+            break;
+        case STRING:
+            ch.stringValue(tokens.stringValue());
+            break;
+        case BINARY:
+            ch.primitiveArray(tokens.binaryValue());
+            break;
+        default:
+            ch.primitive(tokens.value());
+            break;
+        }
+        return true;
+    }
+
+    private void open(boolean object) {
+        if (this.depth == this.objects.length)
+            this.objects = Arrays.copyOf(this.objects, this.depth << 1);
+        this.objects[this.depth++] = object;
+    }
+}
@@ -0,0 +1,85 @@
+package org.mogware.system.dif;
+
+import java.util.Arrays;
+
+class IdentityIntMap {
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    public IdentityIntMap() {
+        this(64);
+    }
+
+    public IdentityIntMap(int capacity) {
+        int n = 16;
+        while (n < capacity * 2)
+            n <<= 1;
+        this.keys = new Object[n];
+        this.values = new int[n];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int get(Object key) {
+        final Object[] tab = this.keys;
+        final int mask = tab.length - 1;
+        for (int i = IdentityIntMap.hash(key, mask); ; i = (i + 1) & mask) {
+            Object item = tab[i];
+            if (item == key)
+                return this.values[i];
+            if (item == null)
+                return -1;
+        }
+    }
+
+    public void put(Object key, int value) {
+        if ((this.size + 1) * 2 > this.keys.length)
+            this.resize();
+        final Object[] tab = this.keys;
+        final int mask = tab.length - 1;
+        for (int i = IdentityIntMap.hash(key, mask); ; i = (i + 1) & mask) {
+            Object item = tab[i];
+            if (item == key) {
+                this.values[i] = value;
+                return;
+            }
+            if (item == null) {
+                tab[i] = key;
+                this.values[i] = value;
+                this.size++;
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        this.size = 0;
+    }
+
+    private void resize() {
+        Object[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new Object[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2];
+        final int mask = this.keys.length - 1;
+        for (int n = 0; n < oldKeys.length; n++) {
+            Object key = oldKeys[n];
+            if (key == null)
+                continue;
+            int i = IdentityIntMap.hash(key, mask);
+            while (this.keys[i] != null)
+                i = (i + 1) & mask;
+            this.keys[i] = key;
+            this.values[i] = oldValues[n];
+        }
+    }
+
+    private static int hash(Object key, int mask) {
+        int h = System.identityHashCode(key);
+        return (h ^ (h >>> 16)) * 0x9E3779B9 >>> 7 & mask;
+    }
+}
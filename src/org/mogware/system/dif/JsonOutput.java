@@ -0,0 +1,200 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+abstract class JsonOutput {
+    private static final char[][] ESCAPES = new char[128][];
+    static {
+        for (int c = 0; c < 0x20; c++)
+            ESCAPES[c] = String.format("\\u%04x", c).toCharArray();
+        ESCAPES['"'] = new char[] {'\\', '"'};
+        ESCAPES['\\'] = new char[] {'\\', '\\'};
+        ESCAPES['\t'] = new char[] {'\\', 't'};
+        ESCAPES['\b'] = new char[] {'\\', 'b'};
+        ESCAPES['\n'] = new char[] {'\\', 'n'};
+        ESCAPES['\r'] = new char[] {'\\', 'r'};
+        ESCAPES['\f'] = new char[] {'\\', 'f'};
+    }
+
+    public abstract void write(char c) throws IOException;
+
+    public abstract void write(String text) throws IOException;
+
+    public abstract void write(char[] buf, int off, int len)
+            throws IOException;
+
+    public abstract void string(String value) throws IOException;
+
+    public abstract void flush() throws IOException;
+
+    public abstract void close() throws IOException;
+
+    static final class CharOutput extends JsonOutput {
+        private final java.io.Writer out;
+
+        public CharOutput(java.io.Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char c) throws IOException {
+            this.out.write(c);
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            this.out.write(text);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            this.out.write(buf, off, len);
+        }
+
+        @Override
+        public void string(String value) throws IOException {
+            this.out.write('"');
+            int start = 0;
+            for (int i = 0, length = value.length(); i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80 || ESCAPES[c] == null)
+                    continue;
+                if (i > start)
+                    this.out.write(value, start, i - start);
+                this.out.write(ESCAPES[c]);
+                start = i + 1;
+            }
+            if (start < value.length())
+                this.out.write(value, start, value.length() - start);
+            this.out.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    static final class Utf8Output extends JsonOutput {
+        private static final int BUFFER_SIZE = 8192;
+        private static final int CHUNK_SIZE = 1024;
+
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos = 0;
+
+        public Utf8Output(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char c) throws IOException {
+            if (c >= 0x80) {
+                this.write(String.valueOf(c));
+                return;
+            }
+            this.reserve(1);
+            this.buf[this.pos++] = (byte) c;
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            for (int i = 0, length = text.length(); i < length; ) {
+                int end = Math.min(length, i + CHUNK_SIZE);
+                this.reserve(3 * (end - i) + 1);
+                i = this.encode(text, i, end, false);
+            }
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            this.reserve(len);
+            final byte[] b = this.buf;
+            int p = this.pos;
+            for (int i = off; i < off + len; i++)
+                b[p++] = (byte) buf[i];
+            this.pos = p;
+        }
+
+        @Override
+        public void string(String value) throws IOException {
+            this.reserve(1);
+            this.buf[this.pos++] = '"';
+            for (int i = 0, length = value.length(); i < length; ) {
+                int end = Math.min(length, i + CHUNK_SIZE);
+                this.reserve(6 * (end - i) + 1);
+                i = this.encode(value, i, end, true);
+            }
+            this.reserve(1);
+            this.buf[this.pos++] = '"';
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.drain();
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.drain();
+            this.out.close();
+        }
+
+        private int encode(String value, int i, int end, boolean escape) {
+            final byte[] b = this.buf;
+            int p = this.pos;
+            for (; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    char[] esc = escape ? ESCAPES[c] : null;
+                    if (esc == null)
+                        b[p++] = (byte) c;
+                    else {
+                        for (char e : esc)
+                            b[p++] = (byte) e;
+                    }
+                }
+                else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | c >> 6);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                }
+                else if (Character.isHighSurrogate(c) &&
+                        i + 1 < value.length() &&
+                        Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    b[p++] = (byte) (0xF0 | cp >> 18);
+                    b[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp & 0x3F);
+                }
+                else if (Character.isSurrogate(c))
+                    b[p++] = '?';
+                else {
+                    b[p++] = (byte) (0xE0 | c >> 12);
+                    b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            this.pos = p;
+            return i;
+        }
+
+        private void reserve(int len) throws IOException {
+            if (this.pos + len > this.buf.length)
+                this.drain();
+        }
+
+        private void drain() throws IOException {
+            if (this.pos > 0)
+                this.out.write(this.buf, 0, this.pos);
+            this.pos = 0;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class JsonTokenReader extends AbstractTokenReader {
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = 0x2020202020202020L;
+    private static final long QUOTES = 0x2222222222222222L;
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final int MAX_DIGITS = 18;
+    private static final long MAX_EXACT = 1L << 53;
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private long consumed = 0;
+
+    private final SymbolTable symbols = SymbolTable.getDefault();
+    private char[] chars = new char[64];
+    private byte[] digits = new byte[32];
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private boolean multipleRoots = false;
+
+    public JsonTokenReader(InputStream in) {
+        if (in == null)
+            throw new NullPointerException("in is null");
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    public JsonTokenReader(java.io.Reader in) {
+        this(new Utf8InputStream(in));
+    }
+
+    public JsonTokenReader(byte[] buf, int off, int len) {
+        if (buf == null)
+            throw new NullPointerException("buf is null");
+        this.in = null;
+        this.buf = buf;
+        this.pos = off;
+        this.limit = off + len;
+        this.consumed = -off;
+    }
+
+    public JsonTokenReader(java.nio.ByteBuffer buf) {
+        this(JsonTokenReader.arrayOf(buf), JsonTokenReader.offsetOf(buf),
+                buf.remaining());
+    }
+
+    public final void setMultipleRoots(boolean multipleRoots) {
+        this.multipleRoots = multipleRoots;
+    }
+
+    public long getPosition() {
+        return this.consumed + this.pos;
+    }
+
+    void reset(int pos) {
+        if (this.in != null)
+            throw new IllegalStateException("Stream input cannot be reset");
+        this.pos = pos;
+        this.depth = 1;
+        this.stack[0] = EMPTY_DOCUMENT;
+        this.token = null;
+    }
+
+    @Override
+    protected Token advance() throws IOException {
+        final int top = this.depth - 1;
+        int c = this.skipWhitespace();
+        switch (this.stack[top]) {
+        case EMPTY_DOCUMENT:
+            if (c < 0 && this.multipleRoots)
+                return Token.END_DOCUMENT;
+            this.stack[top] = NONEMPTY_DOCUMENT;
+            return this.startValue(c);
+        case NONEMPTY_DOCUMENT:
+            if (c < 0)
+                return Token.END_DOCUMENT;
+            if (this.multipleRoots)
+                return this.startValue(c);
+            throw this.unexpected(c);
+        case EMPTY_ARRAY:
+            if (c == ']')
+                return this.pop(Token.END_ARRAY);
+            this.stack[top] = NONEMPTY_ARRAY;
+            return this.startValue(c);
+        case NONEMPTY_ARRAY:
+            if (c == ']')
+                return this.pop(Token.END_ARRAY);
+            if (c != ',')
+                throw this.unexpected(c);
+            return this.startValue(this.skipWhitespace());
+        case EMPTY_OBJECT:
+            if (c == '}')
+                return this.pop(Token.END_OBJECT);
+            return this.startName(top, c);
+        case NONEMPTY_OBJECT:
+            if (c == '}')
+                return this.pop(Token.END_OBJECT);
+            if (c != ',')
+                throw this.unexpected(c);
+            return this.startName(top, this.skipWhitespace());
+        case DANGLING_NAME:
+            if (c != ':')
+                throw this.unexpected(c);
+            this.stack[top] = NONEMPTY_OBJECT;
+            return this.startValue(this.skipWhitespace());
+        default:
+            throw new IllegalStateException("Nesting problem");
+        }
+    }
+
+    private Token startName(int top, int c) throws IOException {
+        if (c != '"')
+            throw this.unexpected(c);
+        this.name = this.readName();
+        this.stack[top] = DANGLING_NAME;
+        return Token.NAME;
+    }
+
+    private Token startValue(int c) throws IOException {
+        switch (c) {
+        case '{':
+            return this.push(EMPTY_OBJECT, Token.BEGIN_OBJECT);
+        case '[':
+            return this.push(EMPTY_ARRAY, Token.BEGIN_ARRAY);
+        case '"':
+            this.text = this.readString();
+            return Token.STRING;
+        case 't':
+            this.expect("rue");
+            this.number = 1;
+            return Token.BOOLEAN;
+        case 'f':
+            this.expect("alse");
+            this.number = 0;
+            return Token.BOOLEAN;
+        case 'n':
+            this.expect("ull");
+            return Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9'))
+                return this.readNumber();
+            throw this.unexpected(c);
+        }
+    }
+
+    private Token push(int scope, Token token) {
+        if (this.depth == this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, this.depth << 1);
+        this.stack[this.depth++] = scope;
+        return token;
+    }
+
+    private Token pop(Token token) {
+        this.depth--;
+        return token;
+    }
+
+    private int read() throws IOException {
+        if (this.pos < this.limit || this.fill())
+            return this.buf[this.pos++] & 0xFF;
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (this.in == null)
+            return false;
+        this.consumed += this.limit;
+        this.pos = 0;
+        this.limit = 0;
+        int n;
+        while ((n = this.in.read(this.buf, 0, this.buf.length)) == 0) ;
+        if (n < 0)
+            return false;
+        this.limit = n;
+        return true;
+    }
+
+    private int skipWhitespace() throws IOException {
+        for (;;) {
+            while (this.pos < this.limit) {
+                int c = this.buf[this.pos++] & 0xFF;
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                    return c;
+            }
+            if (! this.fill())
+                return -1;
+        }
+    }
+
+    private void expect(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            int c = this.read();
+            if (c != rest.charAt(i))
+                throw this.unexpected(c);
+        }
+    }
+
+    private String readName() throws IOException {
+        final int start = this.pos;
+        final int end = JsonTokenReader.scanString(this.buf, start, this.limit,
+                false);
+        if (end < this.limit && this.buf[end] == '"') {
+            this.pos = end + 1;
+            return this.symbols.lookup(this.buf, start, end - start);
+        }
+        return this.readEscapedString();
+    }
+
+    private String readString() throws IOException {
+        final int start = this.pos;
+        final int end = JsonTokenReader.scanString(this.buf, start, this.limit,
+                true);
+        if (end < this.limit && this.buf[end] == '"') {
+            this.pos = end + 1;
+            return new String(this.buf, start, end - start,
+                    StandardCharsets.ISO_8859_1);
+        }
+        return this.readEscapedString();
+    }
+
+    private String readEscapedString() throws IOException {
+        int n = 0;
+        for (;;) {
+            int c = this.read();
+            if (c == '"')
+                return new String(this.chars, 0, n);
+            if (n + 2 > this.chars.length)
+                this.chars = Arrays.copyOf(this.chars, this.chars.length << 1);
+            if (c < 0)
+                throw new IOException("Unterminated string");
+            else if (c == '\\')
+                this.chars[n++] = this.readEscape();
+            else if (c < 0x80) {
+                if (c < 0x20)
+                    throw this.unexpected(c);
+                this.chars[n++] = (char) c;
+            }
+            else
+                n = this.readMultiByte(c, n);
+        }
+    }
+
+    private int readMultiByte(int c, int n) throws IOException {
+        int trail, min, cp;
+        if (c >= 0xC2 && c < 0xE0) {
+            trail = 1;
+            min = 0x80;
+            cp = c & 0x1F;
+        }
+        else if (c >= 0xE0 && c < 0xF0) {
+            trail = 2;
+            min = 0x800;
+            cp = c & 0x0F;
+        }
+        else if (c >= 0xF0 && c < 0xF5) {
+            trail = 3;
+            min = 0x10000;
+            cp = c & 0x07;
+        }
+        else {
+            this.chars[n++] = REPLACEMENT;
+            return n;
+        }
+        for (int i = 0; i < trail; i++) {
+            int t = this.read();
+            if ((t & 0xC0) != 0x80) {
+                if (t >= 0)
+                    this.pos--;
+                this.chars[n++] = REPLACEMENT;
+                return n;
+            }
+            cp = cp << 6 | t & 0x3F;
+        }
+        if (cp < min || cp > Character.MAX_CODE_POINT ||
+                cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)
+            this.chars[n++] = REPLACEMENT;
+        else if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+            this.chars[n++] = (char) cp;
+        else {
+            this.chars[n++] = Character.highSurrogate(cp);
+            this.chars[n++] = Character.lowSurrogate(cp);
+        }
+        return n;
+    }
+
+    private char readEscape() throws IOException {
+        int c = this.read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int d = Character.digit(this.read(), 16);
+                    if (d < 0)
+                        throw new IOException("Illegal unicode escape");
+                    value = value << 4 | d;
+                }
+                return (char) value;
+            }
+        default:
+            throw this.unexpected(c);
+        }
+    }
+
+    private Token readNumber() throws IOException {
+        final int start = this.pos - 1;
+        int end = this.pos;
+        while (end < this.limit && JsonTokenReader.isNumberPart(this.buf[end]))
+            end++;
+        this.pos = end;
+        if (end < this.limit || this.in == null)
+            return this.parseNumber(this.buf, start, end);
+        int n = end - start;
+        if (n > this.digits.length)
+            this.digits = Arrays.copyOf(this.digits, n << 1);
+        System.arraycopy(this.buf, start, this.digits, 0, n);
+        int c;
+        while ((c = this.read()) >= 0 && JsonTokenReader.isNumberPart(c)) {
+            if (n == this.digits.length)
+                this.digits = Arrays.copyOf(this.digits, n << 1);
+            this.digits[n++] = (byte) c;
+        }
+        if (c >= 0)
+            this.pos--;
+        return this.parseNumber(this.digits, 0, n);
+    }
+
+    private Token parseNumber(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = b[i] == '-';
+        if (negative)
+            i++;
+        final int first = i;
+        boolean integral = true;
+        boolean overflow = false;
+        long value = 0;
+        long mantissa = 0;
+        int count = 0;
+        int exponent = 0;
+        boolean exact = true;
+        for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+            int d = b[i] - '0';
+            long next = value * 10 - d;
+            if (value < Long.MIN_VALUE / 10 || next > value)
+                overflow = true;
+            value = next;
+            if (count < MAX_DIGITS) {
+                if (mantissa != 0 || d != 0) {
+                    mantissa = mantissa * 10 + d;
+                    count++;
+                }
+            }
+            else {
+                exponent++;
+                exact &= d == 0;
+            }
+        }
+        if (i == first)
+            throw this.illegalNumber();
+        if (i < end && b[i] == '.') {
+            integral = false;
+            final int fraction = ++i;
+            for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+                int d = b[i] - '0';
+                if (count < MAX_DIGITS) {
+                    if (mantissa != 0 || d != 0) {
+                        mantissa = mantissa * 10 + d;
+                        count++;
+                    }
+                    exponent--;
+                }
+                else
+                    exact &= d == 0;
+            }
+            if (i == fraction)
+                throw this.illegalNumber();
+        }
+        if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+            integral = false;
+            boolean minus = ++i < end && b[i] == '-';
+            if (i < end && (b[i] == '-' || b[i] == '+'))
+                i++;
+            final int digits = i;
+            int e = 0;
+            for (; i < end && b[i] >= '0' && b[i] <= '9'; i++)
+                e = Math.min(e * 10 + b[i] - '0', 99999);
+            if (i == digits)
+                throw this.illegalNumber();
+            exponent += minus ? -e : e;
+        }
+        if (i != end)
+            throw this.illegalNumber();
+        if (integral && !overflow && (negative || value != Long.MIN_VALUE)) {
+            this.number = negative ? value : -value;
+            return Token.LONG;
+        }
+        if (integral) {
+            this.big = new BigInteger(JsonTokenReader.text(b, start, end));
+            return Token.NUMBER;
+        }
+        double real = Double.NaN;
+        if (mantissa == 0)
+            real = 0.0;
+        else if (exact && mantissa <= MAX_EXACT)
+            real = JsonTokenReader.exactDouble(mantissa, exponent);
+        if (Double.isNaN(real)) {
+            if (exact)
+                real = Double.parseDouble(JsonTokenReader.text(b, first, end));
+            if (! exact || Double.isInfinite(real)) {
+                this.big = new BigDecimal(JsonTokenReader.text(b, start, end));
+                return Token.NUMBER;
+            }
+        }
+        this.real = negative ? -real : real;
+        return Token.DOUBLE;
+    }
+
+    private static String text(byte[] b, int start, int end) {
+        return new String(b, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static double exactDouble(long mantissa, int exponent) {
+        if (exponent < -22)
+            return Double.NaN;
+        if (exponent < 0)
+            return mantissa / POW10[-exponent];
+        if (exponent <= 22)
+            return mantissa * POW10[exponent];
+        int extra = exponent - 22;
+        if (extra > 15 || mantissa > MAX_EXACT / (long) POW10[extra])
+            return Double.NaN;
+        return mantissa * (long) POW10[extra] * POW10[22];
+    }
+
+    static int scanString(byte[] b, int i, int limit, boolean ascii) {
+        for (int end = Math.min(limit, i + 16); i < end; i++) {
+            int c = b[i];
+            if (c == '"' || c == '\\' || c < 0x20 && (c >= 0 || ascii))
+                return i;
+        }
+        for (; i + 8 <= limit; i += 8) {
+            long w = JsonTokenReader.word(b, i);
+            long q = w ^ QUOTES;
+            long s = w ^ BACKSLASHES;
+            long m = (q - ONES) & ~q | (s - ONES) & ~s | (w - SPACES) & ~w;
+            if (ascii)
+                m |= w;
+            m &= HIGH_BITS;
+            if (m != 0)
+                return i + (Long.numberOfTrailingZeros(m) >> 3);
+        }
+        for (; i < limit; i++) {
+            int c = b[i];
+            if (c == '"' || c == '\\' || c < 0x20 && (c >= 0 || ascii))
+                return i;
+        }
+        return limit;
+    }
+
+    private static long word(byte[] b, int i) {
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 |
+                (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24 |
+                (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 |
+                (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static boolean isNumberPart(int c) {
+        return c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' ||
+                c == '-' || c == '+';
+    }
+
+    private IllegalStateException illegalNumber() {
+        return new IllegalStateException("Illegal number at position " +
+                this.getPosition());
+    }
+
+    private IllegalStateException unexpected(int c) {
+        if (c < 0)
+            return new IllegalStateException("Unexpected end of input");
+        return new IllegalStateException("Unexpected character '" +
+                (char) c + "' at position " + (this.getPosition() - 1));
+    }
+
+    private static byte[] arrayOf(java.nio.ByteBuffer buf) {
+        if (buf.hasArray())
+            return buf.array();
+        byte[] copy = new byte[buf.remaining()];
+        buf.duplicate().get(copy);
+        return copy;
+    }
+
+    private static int offsetOf(java.nio.ByteBuffer buf) {
+        return buf.hasArray() ? buf.arrayOffset() + buf.position() : 0;
+    }
+}
@@ -1,15 +1,12 @@
 package org.mogware.system.dif;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class JsonWriter implements Writer {
-    private final java.io.Writer out;
+    private final JsonOutput out;
 
     private enum Scope {
         EMPTY_ARRAY,
@@ -27,23 +24,21 @@ public class JsonWriter implements Writer {
     }
 
     private String deferredName = null;
+    private boolean records = false;
     private String indent = null;
     private String separator = ":";
+    private final char[] digits = new char[32];
 
     public JsonWriter(java.io.Writer out) {
         if (out == null)
             throw new NullPointerException("out is null");
-        this.out = out;
+        this.out = new JsonOutput.CharOutput(out);
     }
 
     public JsonWriter(OutputStream out) throws IOException {
         if (out == null)
             throw new NullPointerException("out is null");
-        try {
-            this.out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
-        } catch (UnsupportedEncodingException ex) {
-            throw new IOException("UTF-8 unsupported encoding", ex);
-        }
+        this.out = new JsonOutput.Utf8Output(out);
     }
 
     public final void setIndent(String indent) {
@@ -60,9 +55,10 @@ public class JsonWriter implements Writer {
     @Override
     public Writer beginObject(Class type) throws IOException {
         this.writeDeferredName();
-        return this.open(Scope.EMPTY_OBJECT, "{")
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, "{");
+        if (type != null)
+            this.propertyName("$type").value(this.typeOf(type));
+        return this;
     }
 
     @Override
@@ -84,10 +80,10 @@ public class JsonWriter implements Writer {
     @Override
     public Writer beginList(Class type) throws IOException {
         writeDeferredName();
-        this.open(Scope.EMPTY_OBJECT, "{")
-                .propertyName("$type")
-                .value(this.typeOf(type))
-                .propertyName("$items");
+        this.open(Scope.EMPTY_OBJECT, "{");
+        if (type != null)
+            this.propertyName("$type").value(this.typeOf(type));
+        this.propertyName("$items");
         this.writeDeferredName();
         return this.open(Scope.EMPTY_ARRAY, "[");
     }
@@ -100,9 +96,10 @@ public class JsonWriter implements Writer {
 
     public Writer beginMap(Class type) throws IOException {
         this.writeDeferredName();
-        return this.open(Scope.EMPTY_OBJECT, "{")
-                .propertyName("$type")
-                .value(this.typeOf(type));
+        this.open(Scope.EMPTY_OBJECT, "{");
+        if (type != null)
+            this.propertyName("$type").value(this.typeOf(type));
+        return this;
     }
 
     @Override
@@ -164,7 +161,8 @@ public class JsonWriter implements Writer {
     public Writer value(byte value) throws IOException {
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Byte.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeInt(value, this.digits, 0));
         return this;
     }
 
@@ -172,7 +170,7 @@ public class JsonWriter implements Writer {
     public Writer value(char value) throws IOException {
         this.writeDeferredName();
         this.beforeValue();
-        this.stringOf(Character.toString(value));
+        this.out.string(Character.toString(value));
         return this;
     }
 
@@ -184,7 +182,8 @@ public class JsonWriter implements Writer {
             );
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Double.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeDouble(value, this.digits, 0));
         return this;
     }
 
@@ -196,7 +195,8 @@ public class JsonWriter implements Writer {
             );
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Float.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeFloat(value, this.digits, 0));
         return this;
     }
 
@@ -204,7 +204,8 @@ public class JsonWriter implements Writer {
     public Writer value(int value) throws IOException {
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Integer.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeInt(value, this.digits, 0));
         return this;
     }
 
@@ -212,7 +213,8 @@ public class JsonWriter implements Writer {
     public Writer value(long value) throws IOException {
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Long.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeLong(value, this.digits, 0));
         return this;
     }
 
@@ -220,7 +222,8 @@ public class JsonWriter implements Writer {
     public Writer value(short value) throws IOException {
         this.writeDeferredName();
         this.beforeValue();
-        this.out.write(Short.toString(value));
+        this.out.write(this.digits, 0,
+                NumberWriter.writeInt(value, this.digits, 0));
         return this;
     }
 
@@ -230,17 +233,27 @@ public class JsonWriter implements Writer {
             return this.nullValue();
         this.writeDeferredName();
         this.beforeValue();
-        this.stringOf(value);
+        this.out.string(value);
         return this;
     }
 
+    public void endRecord() throws IOException {
+        if (this.peek() != Scope.NONEMPTY_DOCUMENT)
+            throw new IllegalStateException("Incomplete record");
+        this.out.write('\n');
+        this.replaceTop(Scope.EMPTY_DOCUMENT);
+        this.records = true;
+    }
+
     public void flush() throws IOException {
         this.out.flush();
     }
 
     public void close() throws IOException {
         this.out.close();
-        if (this.peek() != Scope.NONEMPTY_DOCUMENT)
+        Scope context = this.peek();
+        if (context != Scope.NONEMPTY_DOCUMENT &&
+                ! (context == Scope.EMPTY_DOCUMENT && this.records))
             throw new IOException("Incomplete document");
     }
 
@@ -279,7 +292,7 @@ public class JsonWriter implements Writer {
     private void writeDeferredName() throws IOException {
         if (this.deferredName != null) {
             this.beforeName();
-            this.stringOf(deferredName);
+            this.out.string(deferredName);
             this.deferredName = null;
         }
     }
@@ -304,11 +317,11 @@ public class JsonWriter implements Writer {
             this.newline();
             break;
         case NONEMPTY_ARRAY:
-            this.out.append(',');
+            this.out.write(',');
             this.newline();
             break;
         case DANGLING_NAME: // value for name
-            this.out.append(separator);
+            this.out.write(separator);
             this.replaceTop(Scope.NONEMPTY_OBJECT);
             break;
         case NONEMPTY_DOCUMENT:
@@ -328,49 +341,6 @@ public class JsonWriter implements Writer {
         this.stack.set(stack.size() - 1, topOfStack);
     }
 
-    private void stringOf(String value) throws IOException {
-        this.out.write("\"");
-        for (int i = 0, length = value.length(); i < length; i++) {
-            char c = value.charAt(i);
-            switch (c) {
-            case '"':
-            case '\\':
-                this.out.write('\\');
-                this.out.write(c);
-                break;
-            case '\t':
-                this.out.write("\\t");
-                break;
-            case '\b':
-                this.out.write("\\b");
-                break;
-            case '\n':
-                this.out.write("\\n");
-                break;
-            case '\r':
-                this.out.write("\\r");
-                break;
-            case '\f':
-                this.out.write("\\f");
-                break;
-            case '<':
-            case '>':
-            case '&':
-            case '=':
-            case '\'':
-                this.out.write(c);
-                break;
-            default:
-                if (c < 32)
-                    this.out.write(String.format("\\u%04x", (int) c));
-                else
-                    this.out.write(c);
-                break;
-            }
-        }
-        this.out.write("\"");
-    }
-
     private String typeOf(Class type) {
         if (boolean.class == type || Boolean.class == type)
             return "boolean";
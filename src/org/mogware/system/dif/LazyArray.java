@@ -0,0 +1,103 @@
+package org.mogware.system.dif;
+
+import java.util.Arrays;
+
+public class LazyArray implements ArrayType {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final LazyTree tree;
+    private final int start;
+    private Object target;
+
+    private int[] offsets = null;
+    private Object[] values;
+    private int size = 0;
+
+    LazyArray(LazyTree tree, int start) {
+        this.tree = tree;
+        this.start = start;
+    }
+
+    @Override
+    public Object getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public boolean isObjectType() {
+        return false;
+    }
+
+    @Override
+    public boolean isArrayType() {
+        return !this.isObjectType();
+    }
+
+    @Override
+    public int size() {
+        this.scan();
+        return this.size;
+    }
+
+    @Override
+    public boolean add(Object value) {
+        this.scan();
+        this.add(-1);
+        this.values[this.size - 1] = value;
+        return true;
+    }
+
+    @Override
+    public Object get(int index) {
+        this.scan();
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index +
+                    ", Size: " + this.size);
+        if (this.offsets[index] >= 0) {
+            this.values[index] = this.tree.value(this.offsets[index]);
+            this.offsets[index] = -1;
+        }
+        return this.values[index];
+    }
+
+    @Override
+    public void clear() {
+        this.offsets = new int[0];
+        this.values = new Object[0];
+        this.size = 0;
+    }
+
+    private void scan() {
+        if (this.offsets != null)
+            return;
+        final LazyTree tree = this.tree;
+        this.offsets = new int[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+        int pos = tree.skipWhitespace(this.start + 1);
+        if (tree.at(pos) == ']')
+            return;
+        for (;;) {
+            this.add(pos);
+            pos = tree.skipWhitespace(tree.skipValue(pos));
+            if (tree.at(pos) == ']')
+                return;
+            if (tree.at(pos) != ',')
+                throw tree.unexpected(pos);
+            pos = tree.skipWhitespace(pos + 1);
+        }
+    }
+
+    private void add(int offset) {
+        if (this.size == this.offsets.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, this.size << 1);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.offsets[this.size++] = offset;
+    }
+}
@@ -0,0 +1,259 @@
+package org.mogware.system.dif;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class LazyObject implements ObjectType {
+    private static final int HASH_THRESHOLD = 8;
+
+    private final LazyTree tree;
+    private final int start;
+    private Object target;
+    private String type;
+
+    private String[] keys = null;
+    private int[] offsets;
+    private Object[] values;
+    private int size = 0;
+    private Map<String, Integer> index = null;
+
+    LazyObject(LazyTree tree, int start) {
+        this.tree = tree;
+        this.start = start;
+    }
+
+    @Override
+    public Object getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public boolean isObjectType() {
+        return true;
+    }
+
+    @Override
+    public boolean isArrayType() {
+        return !this.isObjectType();
+    }
+
+    @Override
+    public boolean isList() {
+        return (this.target instanceof Collection);
+    }
+
+    @Override
+    public boolean isMap() {
+        return (this.target instanceof Map);
+    }
+
+    @Override
+    public String getType() {
+        this.scan();
+        return this.type;
+    }
+
+    public int size() {
+        this.scan();
+        return this.size;
+    }
+
+    public boolean containsKey(String key) {
+        this.scan();
+        return this.find(key) >= 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        this.scan();
+        if ("$type".equals(key)) {
+            String oldType = this.type;
+            this.type = (String) value;
+            return oldType;
+        }
+        int i = this.find(key);
+        if (i < 0) {
+            this.add(key, -1);
+            this.values[this.size - 1] = value;
+            return null;
+        }
+        Object old = this.value(i);
+        this.values[i] = value;
+        return old;
+    }
+
+    @Override
+    public Object get(String key) {
+        this.scan();
+        int i = this.find(key);
+        return i < 0 ? null : this.value(i);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        this.scan();
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return LazyObject.this.size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < LazyObject.this.size;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (! this.hasNext())
+                            throw new NoSuchElementException();
+                        return new Entry(this.next++);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public ArrayType getKeys() {
+        return (ArrayType) this.get("$keys");
+    }
+
+    @Override
+    public ArrayType getItems() {
+        return (ArrayType) this.get("$items");
+    }
+
+    @Override
+    public void clear() {
+        this.keys = new String[0];
+        this.offsets = new int[0];
+        this.values = new Object[0];
+        this.size = 0;
+        this.index = null;
+    }
+
+    private void scan() {
+        if (this.keys != null)
+            return;
+        final LazyTree tree = this.tree;
+        this.keys = new String[HASH_THRESHOLD];
+        this.offsets = new int[HASH_THRESHOLD];
+        this.values = new Object[HASH_THRESHOLD];
+        int pos = tree.skipWhitespace(this.start + 1);
+        if (tree.at(pos) == '}')
+            return;
+        for (;;) {
+            if (tree.at(pos) != '"')
+                throw tree.unexpected(pos);
+            int end = tree.skipString(pos);
+            String key = tree.name(pos, end);
+            pos = tree.skipWhitespace(end);
+            if (tree.at(pos) != ':')
+                throw tree.unexpected(pos);
+            int value = tree.skipWhitespace(pos + 1);
+            pos = tree.skipWhitespace(tree.skipValue(value));
+            if ("$type".equals(key)) {
+                Object name = tree.value(value);
+                if (! (name instanceof String))
+                    throw new IllegalStateException("Illegal $type at " +
+                            "position " + value);
+                this.type = (String) name;
+            }
+            else {
+                int i = this.find(key);
+                if (i < 0)
+                    this.add(key, value);
+                else
+                    this.offsets[i] = value;
+            }
+            if (tree.at(pos) == '}')
+                return;
+            if (tree.at(pos) != ',')
+                throw tree.unexpected(pos);
+            pos = tree.skipWhitespace(pos + 1);
+        }
+    }
+
+    private int find(String key) {
+        if (this.index != null) {
+            Integer i = this.index.get(key);
+            return i == null ? -1 : i;
+        }
+        for (int i = 0; i < this.size; i++) {
+            String k = this.keys[i];
+            if (k == key || k != null && k.equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private void add(String key, int offset) {
+        final int n = this.size;
+        if (n == this.keys.length) {
+            int capacity = Math.max(HASH_THRESHOLD, n << 1);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.keys[n] = key;
+        this.offsets[n] = offset;
+        this.size = n + 1;
+        if (this.index != null)
+            this.index.put(key, n);
+        else if (this.size > HASH_THRESHOLD) {
+            this.index = new HashMap<>(this.size << 1);
+            for (int i = 0; i < this.size; i++)
+                this.index.put(this.keys[i], i);
+        }
+    }
+
+    private Object value(int i) {
+        if (this.offsets[i] >= 0) {
+            this.values[i] = this.tree.value(this.offsets[i]);
+            this.offsets[i] = -1;
+        }
+        return this.values[i];
+    }
+
+    private class Entry implements Map.Entry<String, Object> {
+        private final int i;
+
+        public Entry(int i) {
+            this.i = i;
+        }
+
+        @Override
+        public String getKey() {
+            return LazyObject.this.keys[this.i];
+        }
+
+        @Override
+        public Object getValue() {
+            return LazyObject.this.value(this.i);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = LazyObject.this.value(this.i);
+            LazyObject.this.values[this.i] = value;
+            return old;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+final class LazyTree {
+    private final byte[] buf;
+    private final int limit;
+    private final JsonTokenReader tokens;
+    private final SymbolTable symbols = SymbolTable.getDefault();
+
+    public LazyTree(byte[] buf) {
+        this.buf = buf;
+        this.limit = buf.length;
+        this.tokens = new JsonTokenReader(buf, 0, buf.length);
+    }
+
+    public Target root() {
+        int pos = this.skipWhitespace(0);
+        Target root;
+        switch (this.at(pos)) {
+        case '{':
+            root = new LazyObject(this, pos);
+            break;
+        case '[':
+            root = new LazyArray(this, pos);
+            break;
+        default:
+            throw new IllegalStateException("Object or array root expected");
+        }
+        pos = this.skipWhitespace(this.skipValue(pos));
+        if (pos < this.limit)
+            throw this.unexpected(pos);
+        return root;
+    }
+
+    public Object value(int pos) {
+        switch (this.at(pos)) {
+        case '{':
+            return new LazyObject(this, pos);
+        case '[':
+            return new LazyArray(this, pos);
+        default:
+            try {
+                this.tokens.reset(pos);
+                this.tokens.nextToken();
+                int end = (int) this.tokens.getPosition();
+                if (end != this.skipValue(pos))
+                    throw this.unexpected(end);
+                return this.tokens.value();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    public String name(int pos, int end) {
+        for (int i = pos + 1; i < end - 1; i++) {
+            if (this.buf[i] == '\\')
+                return (String) this.value(pos);
+        }
+        return this.symbols.lookup(this.buf, pos + 1, end - pos - 2);
+    }
+
+    public int at(int pos) {
+        return pos < this.limit ? this.buf[pos] & 0xFF : -1;
+    }
+
+    public int skipWhitespace(int pos) {
+        for (; pos < this.limit; pos++) {
+            int c = this.buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                break;
+        }
+        return pos;
+    }
+
+    public int skipValue(int pos) {
+        int c = this.at(pos);
+        if (c == '"')
+            return this.skipString(pos);
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            for (int i = pos; i < this.limit; i++) {
+                c = this.buf[i];
+                if (c == '"')
+                    i = this.skipString(i) - 1;
+                else if (c == '{' || c == '[')
+                    depth++;
+                else if ((c == '}' || c == ']') && --depth == 0)
+                    return i + 1;
+            }
+            throw this.unexpected(this.limit);
+        }
+        if (c != 't' && c != 'f' && c != 'n' && c != '-' &&
+                (c < '0' || c > '9'))
+            throw this.unexpected(pos);
+        int end = pos + 1;
+        while (end < this.limit && ! LazyTree.isDelimiter(this.buf[end]))
+            end++;
+        return end;
+    }
+
+    public int skipString(int pos) {
+        for (int i = pos + 1; ; ) {
+            i = JsonTokenReader.scanString(this.buf, i, this.limit, false);
+            if (i >= this.limit)
+                throw this.unexpected(i);
+            if (this.buf[i] == '"')
+                return i + 1;
+            if (this.buf[i] != '\\')
+                throw this.unexpected(i);
+            i += 2;
+        }
+    }
+
+    public IllegalStateException unexpected(int pos) {
+        if (pos >= this.limit)
+            return new IllegalStateException("Unexpected end of input");
+        return new IllegalStateException("Unexpected character '" +
+                (char) (this.buf[pos] & 0xFF) + "' at position " + pos);
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' ||
+                c == '\r' || c == '\t';
+    }
+}
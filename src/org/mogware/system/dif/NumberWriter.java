@@ -0,0 +1,336 @@
+package org.mogware.system.dif;
+
+import java.math.BigInteger;
+
+final class NumberWriter {
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long MASK_32 = (1L << 32) - 1;
+
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    private static final int DOUBLE_P = 53;
+    private static final int DOUBLE_Q_MIN = -1074;
+    private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+    private static final int DOUBLE_C_TINY = 3;
+
+    private static final int FLOAT_P = 24;
+    private static final int FLOAT_Q_MIN = -149;
+    private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+    private static final int FLOAT_C_TINY = 8;
+
+    private static final char[] DIGITS = new char[200];
+    private static final long[] POW10 = new long[19];
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGITS[2 * i] = (char) ('0' + i / 10);
+            DIGITS[2 * i + 1] = (char) ('0' + i % 10);
+        }
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = 125 - NumberWriter.flog2pow10(-k);
+            BigInteger g = -k >= 0 ? BigInteger.TEN.pow(-k) : BigInteger.ONE;
+            BigInteger d = -k >= 0 ? BigInteger.ONE : BigInteger.TEN.pow(k);
+            g = r >= 0 ? g.shiftLeft(r) : g;
+            d = r >= 0 ? d : d.shiftLeft(-r);
+            g = g.divide(d).add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private NumberWriter() {
+    }
+
+    public static int writeInt(int value, char[] buf, int pos) {
+        if (value == Integer.MIN_VALUE)
+            return NumberWriter.writeLong(value, buf, pos);
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + NumberWriter.digitCount(value);
+        NumberWriter.writeDigits(value, buf, end);
+        return end;
+    }
+
+    public static int writeLong(long value, char[] buf, int pos) {
+        if (value == Long.MIN_VALUE) {
+            buf[pos++] = '-';
+            buf[pos++] = '9';
+            value = 223372036854775808L;
+        }
+        else if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + NumberWriter.digitCount(value);
+        int p = end;
+        while (value > Integer.MAX_VALUE) {
+            long q = value / 100;
+            int r = (int) (value - q * 100);
+            buf[--p] = DIGITS[2 * r + 1];
+            buf[--p] = DIGITS[2 * r];
+            value = q;
+        }
+        NumberWriter.writeDigits((int) value, buf, p);
+        return end;
+    }
+
+    public static int writeDouble(double value, char[] buf, int pos) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & ((1L << (DOUBLE_P - 1)) - 1);
+        int bq = (int) (bits >>> (DOUBLE_P - 1)) & 0x7FF;
+        if (bq == 0x7FF)
+            return NumberWriter.writeSpecial(t != 0, bits < 0, buf, pos);
+        if (bits < 0)
+            buf[pos++] = '-';
+        if (bq != 0) {
+            int mq = -DOUBLE_Q_MIN + 1 - bq;
+            long c = DOUBLE_C_MIN | t;
+            if (0 < mq && mq < DOUBLE_P) {
+                long f = c >> mq;
+                if (f << mq == c)
+                    return NumberWriter.writeDecimal(f, 0, buf, pos);
+            }
+            return NumberWriter.toDecimal(-mq, c, 0, buf, pos);
+        }
+        if (t != 0) {
+            if (t < DOUBLE_C_TINY)
+                return NumberWriter.toDecimal(DOUBLE_Q_MIN, 10 * t, -1,
+                        buf, pos);
+            return NumberWriter.toDecimal(DOUBLE_Q_MIN, t, 0, buf, pos);
+        }
+        buf[pos++] = '0';
+        buf[pos++] = '.';
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    public static int writeFloat(float value, char[] buf, int pos) {
+        int bits = Float.floatToRawIntBits(value);
+        int t = bits & ((1 << (FLOAT_P - 1)) - 1);
+        int bq = (bits >>> (FLOAT_P - 1)) & 0xFF;
+        if (bq == 0xFF)
+            return NumberWriter.writeSpecial(t != 0, bits < 0, buf, pos);
+        if (bits < 0)
+            buf[pos++] = '-';
+        if (bq != 0) {
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            int c = FLOAT_C_MIN | t;
+            if (0 < mq && mq < FLOAT_P) {
+                int f = c >> mq;
+                if (f << mq == c)
+                    return NumberWriter.writeDecimal(f, 0, buf, pos);
+            }
+            return NumberWriter.toDecimal(-mq, c, 0, buf, pos);
+        }
+        if (t != 0) {
+            if (t < FLOAT_C_TINY)
+                return NumberWriter.toDecimal(FLOAT_Q_MIN, 10 * t, -1,
+                        buf, pos);
+            return NumberWriter.toDecimal(FLOAT_Q_MIN, t, 0, buf, pos);
+        }
+        buf[pos++] = '0';
+        buf[pos++] = '.';
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    private static int toDecimal(int q, long c, int dk, char[] buf,
+            int pos) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+            cbl = cb - 2;
+            k = NumberWriter.flog10pow2(q);
+        }
+        else {
+            cbl = cb - 1;
+            k = NumberWriter.flog10threeQuartersPow2(q);
+        }
+        int h = q + NumberWriter.flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = NumberWriter.rop(g1, g0, cb << h);
+        long vbl = NumberWriter.rop(g1, g0, cbl << h);
+        long vbr = NumberWriter.rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * NumberWriter.multiplyHigh(s,
+                    115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return NumberWriter.writeDecimal(upin ? sp10 : tp10, k,
+                        buf, pos);
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+            return NumberWriter.writeDecimal(uin ? s : t, k + dk, buf, pos);
+        long cmp = vb - (s + t << 1);
+        return NumberWriter.writeDecimal(
+                cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk,
+                buf, pos);
+    }
+
+    private static int toDecimal(int q, int c, int dk, char[] buf, int pos) {
+        int out = c & 0x1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+            cbl = cb - 2;
+            k = NumberWriter.flog10pow2(q);
+        }
+        else {
+            cbl = cb - 1;
+            k = NumberWriter.flog10threeQuartersPow2(q);
+        }
+        int h = q + NumberWriter.flog2pow10(-k) + 33;
+        long g = G[2 * (k - K_MIN)] + 1;
+        int vb = NumberWriter.rop(g, cb << h);
+        int vbl = NumberWriter.rop(g, cbl << h);
+        int vbr = NumberWriter.rop(g, cbr << h);
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) (s * 1717986919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin)
+                return NumberWriter.writeDecimal(upin ? sp10 : tp10, k,
+                        buf, pos);
+        }
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win)
+            return NumberWriter.writeDecimal(uin ? s : t, k + dk, buf, pos);
+        int cmp = vb - (s + t << 1);
+        return NumberWriter.writeDecimal(
+                cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk,
+                buf, pos);
+    }
+
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = NumberWriter.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = NumberWriter.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static int rop(long g, long cp) {
+        long x1 = NumberWriter.multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+    }
+
+    private static int writeDecimal(long f, int e, char[] buf, int pos) {
+        while (f % 10 == 0 && f != 0) {
+            f /= 10;
+            e++;
+        }
+        int len = NumberWriter.digitCount(f);
+        e += len;
+        int start = pos;
+        if (0 < e && e <= 7) {
+            if (len <= e) {
+                pos = NumberWriter.writeLong(f, buf, pos);
+                for (int i = len; i < e; i++)
+                    buf[pos++] = '0';
+                buf[pos++] = '.';
+                buf[pos++] = '0';
+                return pos;
+            }
+            pos = NumberWriter.writeLong(f, buf, pos + 1);
+            System.arraycopy(buf, start + 1, buf, start, e);
+            buf[start + e] = '.';
+            return pos;
+        }
+        if (-3 < e && e <= 0) {
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = e; i < 0; i++)
+                buf[pos++] = '0';
+            return NumberWriter.writeLong(f, buf, pos);
+        }
+        pos = NumberWriter.writeLong(f, buf, pos + 1);
+        buf[start] = buf[start + 1];
+        buf[start + 1] = '.';
+        if (len == 1)
+            buf[pos++] = '0';
+        buf[pos++] = 'E';
+        return NumberWriter.writeInt(e - 1, buf, pos);
+    }
+
+    private static int writeSpecial(boolean nan, boolean negative,
+            char[] buf, int pos) {
+        String text = nan ? "NaN" : negative ? "-Infinity" : "Infinity";
+        text.getChars(0, text.length(), buf, pos);
+        return pos + text.length();
+    }
+
+    private static void writeDigits(int value, char[] buf, int end) {
+        int p = end;
+        while (value >= 100) {
+            int q = value / 100;
+            int r = value - q * 100;
+            buf[--p] = DIGITS[2 * r + 1];
+            buf[--p] = DIGITS[2 * r];
+            value = q;
+        }
+        if (value >= 10) {
+            buf[--p] = DIGITS[2 * value + 1];
+            buf[--p] = DIGITS[2 * value];
+        }
+        else
+            buf[--p] = (char) ('0' + value);
+    }
+
+    private static int digitCount(long value) {
+        int len = NumberWriter.flog10pow2(
+                64 - Long.numberOfLeadingZeros(value));
+        if (len < POW10.length && value >= POW10[len])
+            len++;
+        return Math.max(len, 1);
+    }
+
+    private static int flog10pow2(int q) {
+        return (int) (q * 661971961083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661971961083L + -274743187321L >> 41);
+    }
+
+    private static int flog2pow10(int e) {
+        return (int) (e * 913124641741L >> 38);
+    }
+
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
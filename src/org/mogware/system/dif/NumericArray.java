@@ -0,0 +1,177 @@
+package org.mogware.system.dif;
+
+import java.util.Arrays;
+
+class NumericArray implements ArrayType {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] longs;
+    private double[] doubles;
+    private Object[] values;
+    private boolean ints;
+    private int size;
+    private Object target;
+
+    @Override
+    public Object getTarget() {
+        return this.target;
+    }
+
+    @Override
+    public void setTarget(Object target) {
+        this.target = target;
+    }
+
+    @Override
+    public boolean isObjectType() {
+        return false;
+    }
+
+    @Override
+    public boolean isArrayType() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    public void addInt(int value) {
+        if (this.size == 0 && this.values == null)
+            this.ints = true;
+        if (!this.ints || this.values != null) {
+            this.add(value);
+            return;
+        }
+        this.append(value);
+    }
+
+    public void addLong(long value) {
+        if (this.ints || this.values != null || this.doubles != null) {
+            this.add(value);
+            return;
+        }
+        this.append(value);
+    }
+
+    private void append(long value) {
+        if (this.longs == null)
+            this.longs = new long[INITIAL_CAPACITY];
+        else if (this.size == this.longs.length)
+            this.longs = Arrays.copyOf(this.longs, this.size << 1);
+        this.longs[this.size++] = value;
+    }
+
+    public void addDouble(double value) {
+        if (this.values != null || this.longs != null) {
+            this.add(value);
+            return;
+        }
+        if (this.doubles == null)
+            this.doubles = new double[INITIAL_CAPACITY];
+        else if (this.size == this.doubles.length)
+            this.doubles = Arrays.copyOf(this.doubles, this.size << 1);
+        this.doubles[this.size++] = value;
+    }
+
+    @Override
+    public boolean add(Object value) {
+        if (this.values == null)
+            this.spill();
+        else if (this.size == this.values.length)
+            this.values = Arrays.copyOf(this.values, this.size << 1);
+        this.values[this.size++] = value;
+        return true;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index);
+        if (this.values != null)
+            return this.values[index];
+        if (this.ints)
+            return (int) this.longs[index];
+        if (this.longs != null)
+            return this.longs[index];
+        return this.doubles[index];
+    }
+
+    @Override
+    public void clear() {
+        this.longs = null;
+        this.doubles = null;
+        this.values = null;
+        this.ints = false;
+        this.size = 0;
+    }
+
+    private void spill() {
+        Object[] boxed = new Object[Math.max(INITIAL_CAPACITY, this.size << 1)];
+        for (int i = 0; i < this.size; i++)
+            boxed[i] = this.get(i);
+        this.values = boxed;
+        this.ints = false;
+        this.longs = null;
+        this.doubles = null;
+    }
+
+    public boolean copyTo(Object array) {
+        if (this.longs != null)
+            return this.copyLongs(array);
+        if (this.doubles != null)
+            return this.copyDoubles(array);
+        return false;
+    }
+
+    private boolean copyLongs(Object array) {
+        final long[] src = this.longs;
+        final int n = this.size;
+        if (array instanceof long[])
+            System.arraycopy(src, 0, array, 0, n);
+        else if (array instanceof int[]) {
+            int[] dst = (int[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = (int) src[i];
+        }
+        else if (array instanceof double[]) {
+            double[] dst = (double[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = src[i];
+        }
+        else if (array instanceof float[]) {
+            float[] dst = (float[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = src[i];
+        }
+        else if (array instanceof short[]) {
+            short[] dst = (short[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = (short) src[i];
+        }
+        else if (array instanceof byte[]) {
+            byte[] dst = (byte[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = (byte) src[i];
+        }
+        else
+            return false;
+        return true;
+    }
+
+    private boolean copyDoubles(Object array) {
+        final double[] src = this.doubles;
+        final int n = this.size;
+        if (array instanceof double[])
+            System.arraycopy(src, 0, array, 0, n);
+        else if (array instanceof float[]) {
+            float[] dst = (float[]) array;
+            for (int i = 0; i < n; i++)
+                dst[i] = (float) src[i];
+        }
+        else
+            return false;
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.mogware.system.delegates.Action1;
+import org.mogware.system.delegates.Func0;
+
+public class ParallelDecoder {
+    public enum Format {
+        JSON_LINES,
+        CBOR_SEQUENCE,
+        BSON_DOCUMENTS
+    }
+
+    private static final int WINDOW_SIZE = 64 << 20;
+    private static final int BREAKER =
+            (CborReader.TYPE_SIMPLE_VALUE << 5) | CborReader.BREAK;
+
+    private final ThreadLocal<Decoder> decoders;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int chunkSize = 4 << 20;
+
+    public ParallelDecoder() {
+        this(Decoder::new);
+    }
+
+    public ParallelDecoder(Func0<Decoder> factory) {
+        if (factory == null)
+            throw new NullPointerException("factory is null");
+        this.decoders = ThreadLocal.withInitial(factory::call);
+    }
+
+    public final void setPool(ForkJoinPool pool) {
+        if (pool == null)
+            throw new NullPointerException("pool is null");
+        this.pool = pool;
+    }
+
+    public final void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    public <T> List<T> decode(Path file, Format format, Class<T> type)
+            throws IOException {
+        final List<T> result = new ArrayList<>();
+        this.decode(file, format, type, result::add);
+        return result;
+    }
+
+    // The file is read through memory-mapped buffers, which stay mapped
+    // until they are garbage collected, so on some platforms (Windows) the
+    // file cannot be deleted or truncated right after decode returns.
+    public <T> void decode(Path file, final Format format, final Class<T> type,
+            Action1<? super T> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            final Window window = new Window(channel);
+            final Deque<ForkJoinTask<List<T>>> pending = new ArrayDeque<>();
+            final int ahead = Math.max(2, this.pool.getParallelism() * 2);
+            try {
+                for (long start = 0; start < window.size; ) {
+                    long end = this.nextBoundary(window, format, start);
+                    final MappedByteBuffer chunk = channel.map(
+                            FileChannel.MapMode.READ_ONLY, start, end - start);
+                    pending.add(this.pool.submit(
+                            () -> this.decodeChunk(chunk, format, type)));
+                    if (pending.size() >= ahead)
+                        ParallelDecoder.deliver(pending.poll(), sink);
+                    start = end;
+                }
+                while (! pending.isEmpty())
+                    ParallelDecoder.deliver(pending.poll(), sink);
+            } finally {
+                for (ForkJoinTask<List<T>> task : pending)
+                    task.cancel(false);
+            }
+        }
+    }
+
+    private <T> List<T> decodeChunk(MappedByteBuffer chunk, Format format,
+            Class<T> type) throws IOException {
+        InputStream inp = new ByteBufferInputStream(chunk);
+        Reader reader;
+        switch (format) {
+        case JSON_LINES:
+            reader = new JsonReader(inp);
+            break;
+        case CBOR_SEQUENCE:
+            reader = new CborReader(inp);
+            break;
+        default:
+            reader = new BsonReader(inp);
+            break;
+        }
+        List<T> records = new ArrayList<>();
+        Iterator<T> it = this.decoders.get().decodeAll(reader, type);
+        while (it.hasNext())
+            records.add(it.next());
+        return records;
+    }
+
+    private long nextBoundary(Window window, Format format, long start)
+            throws IOException {
+        final long target = start + this.chunkSize;
+        if (target >= window.size)
+            return window.size;
+        long pos = start;
+        switch (format) {
+        case JSON_LINES:
+            pos = target;
+            while (pos < window.size && window.get(pos++) != '\n') ;
+            return pos;
+        case CBOR_SEQUENCE:
+            while (pos < target)
+                pos = ParallelDecoder.skipCborItem(window, pos);
+            return pos;
+        default:
+            while (pos < target) {
+                long len = window.getInt(pos) & 0xFFFFFFFFL;
+                if (len < 5)
+                    throw new IOException("bad data. document too short");
+                pos += len;
+                if (pos > window.size)
+                    throw new IOException("unexpected EOF");
+            }
+            return pos;
+        }
+    }
+
+    private static long skipCborItem(Window window, long pos)
+            throws IOException {
+        final int symbol = window.get(pos++);
+        final int major = (symbol >>> 5) & 0x07;
+        final int info = symbol & 0x1F;
+        long length = info;
+        if (info >= CborReader.ONE_BYTE && info <= CborReader.EIGHT_BYTES) {
+            length = 0;
+            for (int i = 1 << (info - CborReader.ONE_BYTE); i > 0; i--)
+                length = length << 8 | window.get(pos++);
+        }
+        else if (info == CborReader.BREAK &&
+                major >= CborReader.TYPE_BYTE_STRING &&
+                major <= CborReader.TYPE_MAP) {
+            while (window.get(pos) != BREAKER)
+                pos = ParallelDecoder.skipCborItem(window, pos);
+            return pos + 1;
+        }
+        else if (info > CborReader.EIGHT_BYTES)
+            throw new IOException("invalid additional information");
+        switch (major) {
+        case CborReader.TYPE_BYTE_STRING:
+        case CborReader.TYPE_TEXT_STRING:
+            if (length < 0 || pos + length > window.size)
+                throw new IOException("unexpected EOF");
+            return pos + length;
+        case CborReader.TYPE_ARRAY:
+        case CborReader.TYPE_MAP:
+            long count = major == CborReader.TYPE_MAP ? length << 1 : length;
+            for (long i = 0; i < count; i++)
+                pos = ParallelDecoder.skipCborItem(window, pos);
+            return pos;
+        case CborReader.TYPE_TAG:
+            return ParallelDecoder.skipCborItem(window, pos);
+        default:
+            return pos;
+        }
+    }
+
+    private static <T> void deliver(ForkJoinTask<List<T>> task,
+            Action1<? super T> sink) throws IOException {
+        List<T> records;
+        try {
+            records = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("decode interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException)
+                cause = cause.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+        for (T record : records)
+            sink.run(record);
+    }
+
+    private static class Window {
+        final FileChannel channel;
+        final long size;
+        MappedByteBuffer buffer = null;
+        long offset = 0;
+
+        public Window(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        public int get(long pos) throws IOException {
+            if (pos >= this.size)
+                throw new IOException("unexpected EOF");
+            if (this.buffer == null || pos < this.offset ||
+                    pos >= this.offset + this.buffer.limit())
+                this.map(pos);
+            return this.buffer.get((int) (pos - this.offset)) & 0xFF;
+        }
+
+        public int getInt(long pos) throws IOException {
+            return this.get(pos) | this.get(pos + 1) << 8 |
+                    this.get(pos + 2) << 16 | this.get(pos + 3) << 24;
+        }
+
+        private void map(long pos) throws IOException {
+            this.offset = pos;
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                    pos, Math.min(WINDOW_SIZE, this.size - pos));
+        }
+    }
+}
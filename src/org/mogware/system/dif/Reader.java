@@ -13,6 +13,34 @@ public interface Reader {
         public void beginArray() throws IOException;
         public void endArray() throws IOException;
         public void primitive(Object value) throws IOException;
+
+        public default void primitiveArray(Object value) throws IOException {
+            this.primitive(value);
+        }
+
+        public default void nullValue() throws IOException {
+            this.primitive(null);
+        }
+
+        public default void booleanValue(boolean value) throws IOException {
+            this.primitive(value);
+        }
+
+        public default void intValue(int value) throws IOException {
+            this.primitive(value);
+        }
+
+        public default void longValue(long value) throws IOException {
+            this.primitive(value);
+        }
+
+        public default void doubleValue(double value) throws IOException {
+            this.primitive(value);
+        }
+
+        public default void stringValue(String value) throws IOException {
+            this.primitive(value);
+        }
     }
 
     public ObjectType newObjectType();
@@ -20,6 +48,11 @@ public interface Reader {
 
     public void parse(ContentHandler ch) throws IOException;
 
+    public default boolean parseNext(ContentHandler ch) throws IOException {
+        throw new UnsupportedOperationException(
+                "Multiple root values not supported");
+    }
+
     public void pushHandler(ContentHandler handler);
     public void popHandler();
 }
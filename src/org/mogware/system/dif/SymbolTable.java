@@ -0,0 +1,102 @@
+package org.mogware.system.dif;
+
+import java.nio.charset.StandardCharsets;
+
+class SymbolTable {
+    private static final int MAX_SYMBOL_LENGTH = 64;
+
+    private static final SymbolTable shared = new SymbolTable(4096);
+    static {
+        for (String name : new String[] {
+                "$type", "$id", "$ref", "$items", "$keys", "value" })
+            shared.intern(name);
+    }
+
+    private final Entry[] table;
+    private final int mask;
+
+    private static final class Entry {
+        final byte[] bytes;
+        final int hash;
+        final String value;
+
+        Entry(byte[] bytes, int hash, String value) {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    public SymbolTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.table = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    public static SymbolTable getDefault() {
+        return SymbolTable.shared;
+    }
+
+    public String lookup(byte[] buf, int off, int len) {
+        if (len > MAX_SYMBOL_LENGTH)
+            return new String(buf, off, len, StandardCharsets.UTF_8);
+        final int hash = SymbolTable.hash(buf, off, len);
+        final int index = hash & this.mask;
+        Entry entry = this.table[index];
+        if (entry != null && entry.hash == hash &&
+                SymbolTable.matches(entry.bytes, buf, off, len))
+            return entry.value;
+        Entry other = this.table[index ^ 1];
+        if (other != null && other.hash == hash &&
+                SymbolTable.matches(other.bytes, buf, off, len))
+            return other.value;
+        byte[] bytes = new byte[len];
+        System.arraycopy(buf, off, bytes, 0, len);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        this.store(index, entry, other, new Entry(bytes, hash, value));
+        return value;
+    }
+
+    public String intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_SYMBOL_LENGTH)
+            return value;
+        final int hash = SymbolTable.hash(bytes, 0, bytes.length);
+        final int index = hash & this.mask;
+        Entry entry = this.table[index];
+        if (entry != null && entry.value.equals(value))
+            return entry.value;
+        Entry other = this.table[index ^ 1];
+        if (other != null && other.value.equals(value))
+            return other.value;
+        this.store(index, entry, other, new Entry(bytes, hash, value));
+        return value;
+    }
+
+    private void store(int index, Entry entry, Entry other, Entry added) {
+        if (entry == null)
+            this.table[index] = added;
+        else if (other == null)
+            this.table[index ^ 1] = added;
+        else
+            this.table[index] = added;
+    }
+
+    private static int hash(byte[] buf, int off, int len) {
+        int h = len;
+        for (int i = off, end = off + len; i < end; i++)
+            h = 31 * h + buf[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(byte[] bytes, byte[] buf, int off,
+            int len) {
+        if (bytes.length != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (bytes[i] != buf[off + i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+
+public interface TokenReader {
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        NULL,
+        BOOLEAN,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        NUMBER,
+        STRING,
+        BINARY,
+        END_DOCUMENT
+    }
+
+    public Token nextToken() throws IOException;
+    public Token currentToken();
+    public String currentName();
+
+    public boolean booleanValue();
+    public int intValue();
+    public long longValue();
+    public double doubleValue();
+    public String stringValue();
+    public Object binaryValue();
+    public Object value();
+
+    public void skipChildren() throws IOException;
+}
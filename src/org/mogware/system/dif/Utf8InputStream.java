@@ -0,0 +1,78 @@
+package org.mogware.system.dif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+class Utf8InputStream extends InputStream {
+    private final java.io.Reader in;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(4096);
+    private final java.nio.ByteBuffer bytes =
+            java.nio.ByteBuffer.allocate(3 * 4096 + 16);
+    private boolean eof = false;
+    private boolean flushed = false;
+
+    public Utf8InputStream(java.io.Reader in) {
+        if (in == null)
+            throw new NullPointerException("in is null");
+        this.in = in;
+        this.chars.flip();
+        this.bytes.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (! this.bytes.hasRemaining()) {
+            if (! this.fill())
+                return -1;
+        }
+        return this.bytes.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (! this.bytes.hasRemaining()) {
+            if (! this.fill())
+                return -1;
+        }
+        int n = Math.min(len, this.bytes.remaining());
+        this.bytes.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (this.flushed)
+            return false;
+        if (! this.eof) {
+            this.chars.compact();
+            int n = this.in.read(this.chars.array(), this.chars.position(),
+                    this.chars.remaining());
+            if (n < 0)
+                this.eof = true;
+            else
+                this.chars.position(this.chars.position() + n);
+            this.chars.flip();
+        }
+        this.bytes.clear();
+        this.encoder.encode(this.chars, this.bytes, this.eof);
+        if (this.eof) {
+            this.encoder.flush(this.bytes);
+            this.flushed = ! this.chars.hasRemaining();
+        }
+        this.bytes.flip();
+        return true;
+    }
+}
@@ -23,6 +23,11 @@ public interface Writer {
 
     public Writer propertyName(String name) throws IOException;
 
+    public default Writer reference(int id) throws IOException {
+        return this.beginObject(null).propertyName("$ref").value(id)
+                .endObject();
+    }
+
     public Writer nullValue() throws IOException;
 
     public Writer value(boolean value) throws IOException;
@@ -35,4 +40,52 @@ public interface Writer {
     public Writer value(short value) throws IOException;
 
     public Writer value(String value) throws IOException;
+
+    public default Writer values(byte[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
+
+    public default Writer values(short[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
+
+    public default Writer values(int[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
+
+    public default Writer values(long[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
+
+    public default Writer values(float[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
+
+    public default Writer values(double[] value, int off, int len)
+            throws IOException {
+        this.beginArray();
+        for (int i = off; i < off + len; i++)
+            this.value(value[i]);
+        return this.endArray();
+    }
 }
@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import junit.framework.Assert;
 import org.junit.Test;
+import org.mogware.system.dif.TokenReader.Token;
 
 public class BsonReaderTest {
     @Test
@@ -74,6 +75,54 @@ public class BsonReaderTest {
         return data;
     }
 
+    @Test
+    public void testTokens() throws Exception {
+        System.out.println("BsonReaderTest: testTokens");
+        byte[] data = hexToBytes(
+            "4000000008626F6F6C65616E000002737472696E670004000000666F6F001269" +
+            "6E7465676572002A0000000000000001646F75626C6500000000000000F13F00"
+        );
+        TokenReader tokens = new BsonTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("boolean", tokens.currentName());
+        Assert.assertEquals(Token.BOOLEAN, tokens.nextToken());
+        Assert.assertFalse(tokens.booleanValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals(Token.STRING, tokens.nextToken());
+        Assert.assertEquals("foo", tokens.stringValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("integer", tokens.currentName());
+        Assert.assertEquals(Token.LONG, tokens.nextToken());
+        Assert.assertEquals(42L, tokens.longValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals(Token.DOUBLE, tokens.nextToken());
+        Assert.assertEquals(1.0625D, tokens.doubleValue(), 0D);
+        Assert.assertEquals(Token.END_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+
+        tokens = new BsonTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        tokens.skipChildren();
+        Assert.assertEquals(Token.END_OBJECT, tokens.currentToken());
+        Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+    }
+
+    @Test
+    public void testTypedArrayLength() throws Exception {
+        System.out.println("BsonReaderTest: testTypedArrayLength");
+        byte[] data = hexToBytes("10000000056100030000008101020300");
+        TokenReader tokens = new BsonTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        try {
+            tokens.nextToken();
+            tokens.nextToken();
+            Assert.fail("truncated int32 array accepted");
+        } catch (IOException ex) {
+            Assert.assertEquals("bad typed array length", ex.getMessage());
+        }
+    }
+
     private static void parseObjectEntry(final Reader reader, final String key)
             throws IOException {
         reader.pushHandler(new DefaultHandler() {
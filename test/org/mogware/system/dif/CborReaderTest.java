@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import junit.framework.Assert;
 import org.junit.Test;
+import org.mogware.system.dif.TokenReader.Token;
 
 public class CborReaderTest {
     @Test
@@ -74,6 +75,56 @@ public class CborReaderTest {
         return data;
     }
 
+    @Test
+    public void testTokens() throws Exception {
+        System.out.println("CborReaderTest: testTokens");
+        byte[] data = hexToBytes(
+            "BF67626F6F6C65616EF466737472696E6763666F6F67696E" +
+            "7465676572182A66646F75626C65FB3FF1000000000000FF"
+        );
+        TokenReader tokens = new CborTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("boolean", tokens.currentName());
+        Assert.assertEquals(Token.BOOLEAN, tokens.nextToken());
+        Assert.assertFalse(tokens.booleanValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals(Token.STRING, tokens.nextToken());
+        Assert.assertEquals("foo", tokens.stringValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("integer", tokens.currentName());
+        Assert.assertEquals(Token.LONG, tokens.nextToken());
+        Assert.assertEquals(42L, tokens.longValue());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals(Token.DOUBLE, tokens.nextToken());
+        Assert.assertEquals(1.0625D, tokens.doubleValue(), 0D);
+        Assert.assertEquals(Token.END_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+
+        tokens = new CborTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        tokens.skipChildren();
+        Assert.assertEquals(Token.END_OBJECT, tokens.currentToken());
+        Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+    }
+
+    @Test
+    public void testTypedArrayLength() throws Exception {
+        System.out.println("CborReaderTest: testTypedArrayLength");
+        byte[] data = hexToBytes("82D84042FF01D84A43010203");
+        TokenReader tokens = new CborTokenReader(new ByteArrayInputStream(data));
+        Assert.assertEquals(Token.BEGIN_ARRAY, tokens.nextToken());
+        Assert.assertEquals(Token.BINARY, tokens.nextToken());
+        Assert.assertTrue(java.util.Arrays.equals(new byte[] { -1, 1 },
+                (byte[]) tokens.binaryValue()));
+        try {
+            tokens.nextToken();
+            Assert.fail("truncated int32 array accepted");
+        } catch (IOException ex) {
+            Assert.assertEquals("bad typed array length", ex.getMessage());
+        }
+    }
+
     private static void parseObjectEntry(final Reader reader, final String key)
             throws IOException {
         reader.pushHandler(new DefaultHandler() {
@@ -113,6 +113,24 @@ public class CborWriterTest {
             outputStream.toByteArray()
         );
     }
+
+    @Test
+    public void typedArrays() throws Exception {
+        System.out.println("CborWriterTest: typedArrays");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CborWriter cborWriter = new CborWriter(outputStream);
+        cborWriter
+            .beginArray()
+                .values(new byte[] { 1, 2 }, 0, 2)
+                .values(new int[] { 1, -1 }, 0, 2)
+                .values(new double[] { 1.5D }, 0, 1)
+            .endArray();
+        cborWriter.close();
+        assertArrayEquals(hexToBytes(
+            "9F420102D84A4800000001FFFFFFFFD852483FF8000000000000FF"),
+            outputStream.toByteArray()
+        );
+    }
     
     private static byte[] hexToBytes(String s) {
         int len = s.length();
@@ -0,0 +1,93 @@
+package org.mogware.system.dif;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ClassMetaTest {
+    @Test
+    public void cachedByClass() throws Exception {
+        System.out.println("ClassMetaTest: cachedByClass");
+        ClassMeta meta = new ClassMeta();
+        ClassMeta.Meta first = meta.getDeepDeclaredFields(TestObject.class);
+        ClassMeta.Meta second = meta.getDeepDeclaredFields(TestObject.class);
+        assertSame(first, second);
+        assertNotNull(first.getAccessor("second"));
+        assertEquals(1, meta.getMissCount());
+        assertEquals(1, meta.getHitCount());
+    }
+
+    @Test
+    public void writePlan() throws Exception {
+        System.out.println("ClassMetaTest: writePlan");
+        ClassMeta meta = new ClassMeta();
+        ClassMeta.Property[] properties =
+                meta.getWritePlan(TestObject.class).getProperties();
+        assertEquals(3, properties.length);
+        assertEquals(ClassMeta.Kind.BOOLEAN, properties[0].kind);
+        assertEquals(ClassMeta.Kind.LONG, properties[1].kind);
+        assertEquals(ClassMeta.Kind.DOUBLE, properties[2].kind);
+        assertSame(properties, meta.getWritePlan(TestObject.class)
+                .getProperties());
+    }
+
+    @Test
+    public void boundedSize() throws Exception {
+        System.out.println("ClassMetaTest: boundedSize");
+        ClassMeta meta = new ClassMeta(1);
+        meta.getDeepDeclaredFields(TestObject.class);
+        meta.getDeepDeclaredFields(String.class);
+        meta.getDeepDeclaredFields(TestObject.class);
+        assertEquals(3, meta.getMissCount());
+        assertEquals(0, meta.getHitCount());
+    }
+
+    @Test
+    public void concurrentMiss() throws Exception {
+        System.out.println("ClassMetaTest: concurrentMiss");
+        for (int round = 0; round < 20; round++) {
+            final ClassMeta meta = new ClassMeta(4);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[8];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    meta.getDeepDeclaredFields(TestNode.class);
+                });
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals(1, meta.getMissCount());
+            assertEquals(threads.length - 1, meta.getHitCount());
+        }
+    }
+
+    @Test
+    public void encoderDecoderInstance() throws Exception {
+        System.out.println("ClassMetaTest: encoderDecoderInstance");
+        ClassMeta meta = new ClassMeta(8);
+        StringWriter output = new StringWriter();
+        JsonWriter writer = new JsonWriter(output);
+        Encoder encoder = new Encoder();
+        encoder.setClassMeta(meta);
+        encoder.encode(writer, new TestObject(true, 1L, 2.5D));
+        writer.close();
+        assertEquals(1, meta.getMissCount());
+        Decoder decoder = new Decoder();
+        decoder.setClassMeta(meta);
+        assertEquals(new TestObject(true, 1L, 2.5D), decoder.decode(
+                new JsonReader(new StringReader(output.toString()))));
+        assertEquals(1, meta.getMissCount());
+        assertEquals(1, meta.getHitCount());
+    }
+}
@@ -10,6 +10,10 @@ import java.util.HashMap;
 import java.util.Locale;
 import org.junit.Test;
 import org.mogware.system.Guid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class EncodeDecodeBsonTest extends TestCaseBinary {
 
@@ -131,4 +135,70 @@ public class EncodeDecodeBsonTest extends TestCaseBinary {
                 "00000000126C656173745369674269747300A08601000000000000"
         ));
     }
+
+    @Test
+    public void references() throws Exception {
+        System.out.println("EncodeDecodeBsonTest: references");
+        TestNode a = new TestNode("a");
+        TestNode b = new TestNode("b");
+        a.next = b;
+        a.other = b;
+        b.next = a;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BsonWriter writer = new BsonWriter(outputStream);
+        Encoder encoder = new Encoder();
+        encoder.setReferences(true);
+        encoder.encode(writer, a);
+        writer.close();
+        TestNode decoded = (TestNode) decode(outputStream.toByteArray());
+        assertEquals("a", decoded.name);
+        assertSame(decoded.next, decoded.other);
+        assertSame(decoded, decoded.next.next);
+        assertEquals("b", decoded.next.name);
+    }
+
+    @Test
+    public void typeDictionary() throws Exception {
+        System.out.println("EncodeDecodeBsonTest: typeDictionary");
+        ArrayList<TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            list.add(new TestObject(true, i, 0.5D));
+        byte[] plain = encode(list);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BsonWriter writer = new BsonWriter(outputStream);
+        writer.setTypeDictionary(true);
+        new Encoder().encode(writer, list);
+        writer.close();
+        byte[] compact = outputStream.toByteArray();
+        assertTrue(compact.length < plain.length);
+        assertEquals(list, decode(compact));
+    }
+
+    @Test
+    public void primitiveArrays() throws Exception {
+        System.out.println("EncodeDecodeBsonTest: primitiveArrays");
+        TestArrays arrays = TestArrays.sample();
+        TestArrays decoded = (TestArrays) decode(encode(arrays));
+        assertArrayEquals(arrays.bytes, decoded.bytes);
+        assertArrayEquals(arrays.shorts, decoded.shorts);
+        assertArrayEquals(arrays.ints, decoded.ints);
+        assertArrayEquals(arrays.longs, decoded.longs);
+        assertArrayEquals(arrays.floats, decoded.floats, 0F);
+        assertArrayEquals(arrays.doubles, decoded.doubles, 0D);
+    }
+
+    @Test
+    public void typedValues() throws Exception {
+        System.out.println("EncodeDecodeBsonTest: typedValues");
+        TestObject object = new TestObject(true, 1234L, 5.678D);
+        Decoder decoder = new Decoder();
+        decoder.setDirectBinding(true);
+        assertEquals(object, decoder.decode(new BsonReader(
+                new ByteArrayInputStream(encode(object)), false)));
+        Object[] items = (Object[]) decode(
+                encode(new Object[] { 1, 2, "x" }), true);
+        assertEquals(Arrays.asList(1, 2, "x"), Arrays.asList(items));
+        items = (Object[]) decode(encode(new Object[] { 1, 2 }), true);
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(items));
+    }
 }
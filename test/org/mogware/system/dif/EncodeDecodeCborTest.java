@@ -10,6 +10,10 @@ import java.util.HashMap;
 import java.util.Locale;
 import org.junit.Test;
 import org.mogware.system.Guid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class EncodeDecodeCborTest extends TestCaseBinary {
 
@@ -124,4 +128,57 @@ public class EncodeDecodeCborTest extends TestCaseBinary {
                 "65617374536967426974731A000186A0FF"
         ));
     }
+
+    @Test
+    public void references() throws Exception {
+        System.out.println("EncodeDecodeCborTest: references");
+        TestNode a = new TestNode("a");
+        TestNode b = new TestNode("b");
+        a.next = b;
+        a.other = b;
+        b.next = a;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(outputStream);
+        Encoder encoder = new Encoder();
+        encoder.setReferences(true);
+        encoder.encode(writer, a);
+        writer.close();
+        TestNode decoded = (TestNode) decode(outputStream.toByteArray());
+        assertEquals("a", decoded.name);
+        assertSame(decoded.next, decoded.other);
+        assertSame(decoded, decoded.next.next);
+        assertEquals("b", decoded.next.name);
+    }
+
+    @Test
+    public void typeDictionary() throws Exception {
+        System.out.println("EncodeDecodeCborTest: typeDictionary");
+        ArrayList<TestObject> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            list.add(new TestObject(true, i, 0.5D));
+        byte[] plain = encode(list);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CborWriter writer = new CborWriter(outputStream);
+        writer.setTypeDictionary(true);
+        new Encoder().encode(writer, list);
+        writer.close();
+        byte[] compact = outputStream.toByteArray();
+        assertTrue(compact.length < plain.length);
+        assertEquals(list, decode(compact));
+    }
+
+    @Test
+    public void primitiveArrays() throws Exception {
+        System.out.println("EncodeDecodeCborTest: primitiveArrays");
+        TestArrays arrays = TestArrays.sample();
+        TestArrays decoded = (TestArrays) decode(encode(arrays));
+        assertArrayEquals(arrays.bytes, decoded.bytes);
+        assertArrayEquals(arrays.shorts, decoded.shorts);
+        assertArrayEquals(arrays.ints, decoded.ints);
+        assertArrayEquals(arrays.longs, decoded.longs);
+        assertArrayEquals(arrays.floats, decoded.floats, 0F);
+        assertArrayEquals(arrays.doubles, decoded.doubles, 0D);
+        assertArrayEquals(arrays.ints,
+                (int[]) decode(encode(arrays.ints)));
+    }
 }
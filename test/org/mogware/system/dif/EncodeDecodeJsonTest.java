@@ -1,15 +1,36 @@
 package org.mogware.system.dif;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.junit.Test;
 import org.mogware.system.Guid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class EncodeDecodeJsonTest extends TestCaseString {
     @Override
@@ -99,4 +120,469 @@ public class EncodeDecodeJsonTest extends TestCaseString {
             "{\"$type\":\"org.mogware.system.Guid\"," +
                     "\"mostSigBits\":100000,\"leastSigBits\":100000}");
     }
+
+    @Test
+    public void references() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: references");
+        TestNode a = new TestNode("a");
+        TestNode b = new TestNode("b");
+        a.next = b;
+        a.other = b;
+        b.next = a;
+        StringWriter outputWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(outputWriter);
+        Encoder encoder = new Encoder();
+        encoder.setReferences(true);
+        encoder.encode(writer, a);
+        writer.close();
+        String value = outputWriter.toString();
+        assertEquals(
+            "{\"$type\":\"org.mogware.system.dif.TestNode\",\"$id\":1," +
+                "\"name\":\"a\",\"next\":{" +
+                    "\"$type\":\"org.mogware.system.dif.TestNode\"," +
+                    "\"$id\":2,\"name\":\"b\",\"next\":{\"$ref\":1}," +
+                    "\"other\":null,\"values\":null" +
+                "},\"other\":{\"$ref\":2},\"values\":null" +
+            "}",
+            value
+        );
+        TestNode decoded = (TestNode) decode(value);
+        assertEquals("a", decoded.name);
+        assertSame(decoded.next, decoded.other);
+        assertSame(decoded, decoded.next.next);
+        assertEquals("b", decoded.next.name);
+    }
+
+    @Test
+    public void directBinding() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: directBinding");
+        TestNode a = new TestNode("a");
+        TestNode b = new TestNode("b");
+        a.next = b;
+        a.other = b;
+        a.values = new int[] { 1, 2, 3 };
+        b.next = a;
+        StringWriter outputWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(outputWriter);
+        Encoder encoder = new Encoder();
+        encoder.setReferences(true);
+        encoder.encode(writer, a);
+        writer.close();
+        JsonReader reader = new JsonReader(
+                new StringReader(outputWriter.toString()));
+        Decoder decoder = new Decoder();
+        decoder.setDirectBinding(true);
+        TestNode decoded = (TestNode) decoder.decode(reader);
+        assertEquals("a", decoded.name);
+        assertEquals("b", decoded.next.name);
+        assertSame(decoded.next, decoded.other);
+        assertSame(decoded, decoded.next.next);
+        assertEquals(3, decoded.values.length);
+        assertEquals(3, decoded.values[2]);
+        assertEquals(null, decoded.next.values);
+        Object[] items = (Object[]) decoder.decode(new JsonReader(
+                new StringReader("[\"x\",{\"$type\":\"java.util.Date\"," +
+                        "\"value\":1}]")));
+        assertEquals("x", items[0]);
+        assertEquals(new Date(1), items[1]);
+    }
+
+    @Test
+    public void typedDecode() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: typedDecode");
+        String value = "{\"name\":\"r\"," +
+                "\"items\":[{\"first\":true,\"second\":1,\"third\":2.5}]," +
+                "\"counts\":{\"a\":1,\"b\":2},\"values\":[1,2]," +
+                "\"node\":{\"name\":\"n\"}}";
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            TestRecord record = decoder.decode(
+                    new JsonReader(new StringReader(value)), TestRecord.class);
+            assertEquals("r", record.name);
+            assertEquals(Arrays.asList(new TestObject(true, 1L, 2.5D)),
+                    record.items);
+            assertEquals(Integer.valueOf(2), record.counts.get("b"));
+            assertEquals(2, record.values[1]);
+            assertEquals("n", record.node.name);
+        }
+    }
+
+    @Test
+    public void primitiveArrays() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: primitiveArrays");
+        TestArrays arrays = TestArrays.sample();
+        String value = encode(arrays);
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            TestArrays decoded = (TestArrays) decoder.decode(
+                    new JsonReader(new StringReader(value)));
+            assertArrayEquals(arrays.bytes, decoded.bytes);
+            assertArrayEquals(arrays.shorts, decoded.shorts);
+            assertArrayEquals(arrays.ints, decoded.ints);
+            assertArrayEquals(arrays.longs, decoded.longs);
+            assertArrayEquals(arrays.floats, decoded.floats, 0F);
+            assertArrayEquals(arrays.doubles, decoded.doubles, 0D);
+            TestArrays mixed = decoder.decode(new JsonReader(
+                    new StringReader("{\"doubles\":[1,2.5],\"ints\":[]}")),
+                    TestArrays.class);
+            assertArrayEquals(new double[] { 1D, 2.5D }, mixed.doubles, 0D);
+            assertEquals(0, mixed.ints.length);
+        }
+    }
+
+    @Test
+    public void omitDeclaredTypes() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: omitDeclaredTypes");
+        TestNode a = new TestNode("a");
+        a.next = new TestNode("b");
+        StringWriter outputWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(outputWriter);
+        Encoder encoder = new Encoder();
+        encoder.setOmitDeclaredTypes(true);
+        encoder.encode(writer, a, TestNode.class);
+        writer.close();
+        String value = outputWriter.toString();
+        assertEquals(
+            "{\"name\":\"a\",\"next\":{\"name\":\"b\",\"next\":null," +
+                "\"other\":null,\"values\":null}," +
+                "\"other\":null,\"values\":null}",
+            value
+        );
+        TestNode decoded = new Decoder().decode(
+                new JsonReader(new StringReader(value)), TestNode.class);
+        assertEquals("a", decoded.name);
+        assertEquals("b", decoded.next.name);
+    }
+
+    @Test
+    public void referencesWithoutTypes() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: referencesWithoutTypes");
+        Outer outer = new Outer();
+        outer.inner = new Inner();
+        outer.node = new TestNode("shared");
+        outer.inner.node = outer.node;
+        StringWriter outputWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(outputWriter);
+        Encoder encoder = new Encoder();
+        encoder.setReferences(true);
+        encoder.setOmitDeclaredTypes(true);
+        encoder.encode(writer, outer, Outer.class);
+        writer.close();
+        String value = outputWriter.toString();
+        assertEquals("{\"$id\":1,\"inner\":{\"$id\":2,\"node\":{\"$id\":3," +
+                "\"name\":\"shared\",\"next\":null,\"other\":null," +
+                "\"values\":null}},\"node\":{\"$ref\":3}}", value);
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            Outer decoded = decoder.decode(
+                    new JsonReader(new StringReader(value)), Outer.class);
+            assertEquals("shared", decoded.node.name);
+            assertSame(decoded.node, decoded.inner.node);
+        }
+    }
+
+    @Test
+    public void lateType() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: lateType");
+        String value = "{\"inner\":{\"node\":{\"name\":\"a\"," +
+                "\"$type\":\"org.mogware.system.dif.TestNode\"}}," +
+                "\"node\":{\"name\":\"b\",\"extra\":\"x\",\"values\":[1]," +
+                "\"$type\":\"" + Special.class.getName() + "\"}}";
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            Outer decoded = decoder.decode(
+                    new JsonReader(new StringReader(value)), Outer.class);
+            assertEquals(TestNode.class, decoded.inner.node.getClass());
+            assertEquals("a", decoded.inner.node.name);
+            Special special = (Special) decoded.node;
+            assertEquals("b", special.name);
+            assertEquals("x", special.extra);
+            assertEquals(1, special.values[0]);
+        }
+    }
+
+    @Test
+    public void classFilter() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: classFilter");
+        String value = "{\"$type\":\"org.mogware.system.dif.TestNode\"," +
+                "\"name\":\"a\"}";
+        Decoder decoder = new Decoder();
+        decoder.setClassFilter(name -> name.startsWith("java."));
+        try {
+            decoder.decode(new JsonReader(new StringReader(value)));
+            fail("TestNode should not be allowed");
+        } catch (IOException ex) {
+            assertEquals("Class 'org.mogware.system.dif.TestNode' " +
+                    "is not allowed", ex.getMessage());
+        }
+        String classValue = "[{\"$type\":\"class\",\"value\":" +
+                "\"org.mogware.system.dif.TestNode\"}]";
+        try {
+            decoder.decode(new JsonReader(new StringReader(classValue)));
+            fail("TestNode should not be allowed as a class value");
+        } catch (IOException ex) {
+            assertEquals("Class 'org.mogware.system.dif.TestNode' " +
+                    "is not allowed", ex.getMessage());
+        }
+        assertArrayEquals(new Object[] { String.class },
+                (Object[]) decoder.decode(new JsonReader(new StringReader(
+                        "[{\"$type\":\"class\"," +
+                        "\"value\":\"java.lang.String\"}]"))));
+        decoder.setClassFilter(null);
+        decoder.setClassLoader(TestNode.class.getClassLoader());
+        TestNode node = (TestNode) decoder.decode(
+                new JsonReader(new StringReader(value)));
+        assertEquals("a", node.name);
+        for (int i = 0; i < 2; i++) {
+            try {
+                decoder.decode(new JsonReader(new StringReader(
+                        "{\"$type\":\"org.mogware.Missing\"}")));
+                fail("Missing class should not resolve");
+            } catch (IOException ex) {
+                assertEquals("Class instance 'org.mogware.Missing' " +
+                        "could not be created", ex.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void classLoaderRelease() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: classLoaderRelease");
+        URLClassLoader loader = new URLClassLoader(new URL[] {
+            TestNode.class.getProtectionDomain().getCodeSource().getLocation()
+        }, null);
+        Decoder decoder = new Decoder();
+        decoder.setClassLoader(loader);
+        Object decoded = decoder.decode(new JsonReader(new StringReader(
+                "{\"$type\":\"org.mogware.system.dif.TestNode\"," +
+                "\"name\":\"a\"}")));
+        assertSame(loader, decoded.getClass().getClassLoader());
+        WeakReference<ClassLoader> released = new WeakReference<>(loader);
+        loader.close();
+        loader = null;
+        decoder = null;
+        decoded = null;
+        for (int i = 0; i < 100 && released.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(released.get());
+    }
+
+    @Test
+    public void allocator() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: allocator");
+        final List<Class> allocated = new ArrayList<>();
+        Decoder decoder = new Decoder();
+        decoder.setAllocator(type -> {
+            allocated.add(type);
+            return new TestNode(null);
+        });
+        String value = "{\"$type\":\"org.mogware.system.dif.TestNode\"," +
+                "\"name\":\"a\"}";
+        TestNode node = (TestNode) decoder.decode(
+                new JsonReader(new StringReader(value)));
+        assertEquals("a", node.name);
+        assertEquals(Arrays.asList(TestNode.class), allocated);
+    }
+
+    @Test
+    public void constructorRetry() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: constructorRetry");
+        String value = "{\"$type\":\"" + Flaky.class.getName() + "\"," +
+                "\"name\":\"a\"}";
+        Flaky.failing = true;
+        try {
+            new Decoder().decode(new JsonReader(new StringReader(value)));
+            fail("failing constructor accepted");
+        } catch (IOException ex) {
+        } finally {
+            Flaky.failing = false;
+        }
+        Flaky decoded = (Flaky) new Decoder().decode(
+                new JsonReader(new StringReader(value)));
+        assertEquals("a", decoded.name);
+    }
+
+    @Test
+    public void numericCoercion() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: numericCoercion");
+        String value = "{\"$type\":\"" + Numeric.class.getName() + "\"," +
+                "\"m\":{\"a\":1},\"l\":[1,2],\"d\":3,\"n\":[4]}";
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            Numeric decoded = (Numeric) decoder.decode(
+                    new JsonReader(new StringReader(value)));
+            double a = decoded.m.get("a");
+            assertEquals(1D, a, 0D);
+            assertEquals(Arrays.asList(1D, 2D), decoded.l);
+            assertEquals(Double.valueOf(3D), decoded.d);
+            assertEquals(Arrays.asList(4L), decoded.n);
+        }
+    }
+
+    @Test
+    public void bigNumbers() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: bigNumbers");
+        String value = "[12345678901234567890,0.12345678901234567890123]";
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            Object[] items = (Object[]) decoder.decode(
+                    new JsonReader(new StringReader(value)));
+            assertEquals(new BigInteger("12345678901234567890"), items[0]);
+            assertEquals(new BigDecimal("0.12345678901234567890123"),
+                    items[1]);
+        }
+    }
+
+    @Test
+    public void handlerReuse() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: handlerReuse");
+        TestNode a = new TestNode("a");
+        a.next = new TestNode("b");
+        a.next.next = new TestNode("c");
+        a.next.values = new int[] { 1, 2 };
+        String value = encode(a);
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            try {
+                decoder.decode(new JsonReader(new StringReader(
+                        value.substring(0, value.lastIndexOf('c')))));
+                fail("truncated input accepted");
+            } catch (IOException | IllegalStateException ex) {
+            }
+            for (int i = 0; i < 2; i++) {
+                TestNode decoded = (TestNode) decoder.decode(
+                        new JsonReader(new StringReader(value)));
+                assertEquals("a", decoded.name);
+                assertEquals("c", decoded.next.next.name);
+                assertArrayEquals(new int[] { 1, 2 }, decoded.next.values);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentDecode() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: concurrentDecode");
+        final String value = encode(new TestObject(true, 1234L, 5.678D));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+                results.add(executor.submit(() -> decode(value)));
+            for (Future<Object> result : results)
+                assertEquals(new TestObject(true, 1234L, 5.678D),
+                        result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void records() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: records");
+        List<TestObject> objects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            objects.add(new TestObject(i % 2 == 0, i, i / 4.0));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(output);
+        Encoder encoder = new Encoder();
+        encoder.setOmitDeclaredTypes(true);
+        encoder.encodeAll(writer, objects.iterator(), TestObject.class);
+        writer.close();
+        String value = new String(output.toByteArray(), "UTF-8");
+        assertEquals(1000, value.split("\n").length);
+        assertEquals("{\"first\":true,\"second\":0,\"third\":0.0}\n",
+                value.substring(0, value.indexOf('\n') + 1));
+        for (boolean direct : new boolean[] { false, true }) {
+            Decoder decoder = new Decoder();
+            decoder.setDirectBinding(direct);
+            Iterator<TestObject> records = decoder.decodeAll(new JsonReader(
+                    new ByteArrayInputStream(output.toByteArray())),
+                    TestObject.class);
+            for (TestObject object : objects)
+                assertEquals(object, records.next());
+            assertFalse(records.hasNext());
+        }
+        List<Object> mixed = new Decoder().stream(new JsonReader(
+                new StringReader("[1,2]\n\n null \r\n{\"$type\":\"int\"," +
+                        "\"value\":3}{\"$type\":\"string\",\"value\":\"x\"}\n")),
+                Object.class).collect(Collectors.toList());
+        assertEquals(4, mixed.size());
+        assertArrayEquals(new Object[] { 1L, 2L }, (Object[]) mixed.get(0));
+        assertEquals(null, mixed.get(1));
+        assertEquals(3, mixed.get(2));
+        assertEquals("x", mixed.get(3));
+        assertFalse(new Decoder().decodeAll(new JsonReader(
+                new StringReader(" \n")), Object.class).hasNext());
+        try {
+            new Decoder().decode(new JsonReader(
+                    new StringReader("{}\n{}")), Object.class);
+            fail("multiple roots accepted");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test
+    public void lazyTree() throws Exception {
+        System.out.println("EncodeDecodeJsonTest: lazyTree");
+        TestObject[] objects = new TestObject[100];
+        StringBuilder json = new StringBuilder("{\"objects\":[");
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new TestObject(i % 2 == 0, i, i / 4.0);
+            json.append(i == 0 ? "" : ",").append(encode(objects[i]));
+        }
+        json.append("],\"status\":\"ok\"}");
+        byte[] bytes = json.toString().getBytes("UTF-8");
+        ObjectType root = (ObjectType) new JsonReader(bytes).readTree();
+        assertEquals("ok", root.get("status"));
+        ArrayType items = (ArrayType) root.get("objects");
+        Decoder decoder = new Decoder();
+        assertEquals(objects[42], decoder.convert(
+                (Target) items.get(42), TestObject.class));
+        assertArrayEquals(objects, decoder.convert(
+                (Target) ((ObjectType) new JsonReader(bytes).readTree())
+                        .get("objects"), TestObject[].class));
+    }
+
+    public static class Outer {
+        Inner inner;
+        TestNode node;
+    }
+
+    public static class Inner {
+        TestNode node;
+    }
+
+    public static class Special extends TestNode {
+        String extra;
+
+        Special() {
+            super(null);
+        }
+    }
+
+    public static class Numeric {
+        Map<String, Double> m;
+        List<Double> l;
+        Double d;
+        List<Long> n;
+    }
+
+    public static class Flaky {
+        static volatile boolean failing = false;
+        String name;
+
+        public Flaky() {
+            if (failing)
+                throw new IllegalStateException("not ready");
+        }
+    }
 }
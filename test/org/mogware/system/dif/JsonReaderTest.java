@@ -1,9 +1,13 @@
 package org.mogware.system.dif;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import junit.framework.Assert;
 import org.junit.Test;
+import org.mogware.system.dif.TokenReader.Token;
 
 public class JsonReaderTest {
     @Test
@@ -63,6 +67,277 @@ public class JsonReaderTest {
         });
     }
 
+    @Test
+    public void testTokens() throws Exception {
+        System.out.println("JsonReaderTest: testTokens");
+        TokenReader tokens = new JsonTokenReader(new StringReader(
+            "{\"a\":{\"x\":[1,{}]},\"b\":[false,\"foo\",42,1.0625,null]}"
+        ));
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("a", tokens.currentName());
+        Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+        tokens.skipChildren();
+        Assert.assertEquals(Token.END_OBJECT, tokens.currentToken());
+        Assert.assertEquals(Token.NAME, tokens.nextToken());
+        Assert.assertEquals("b", tokens.currentName());
+        Assert.assertEquals(Token.BEGIN_ARRAY, tokens.nextToken());
+        Assert.assertEquals(Token.BOOLEAN, tokens.nextToken());
+        Assert.assertFalse(tokens.booleanValue());
+        Assert.assertEquals(Token.STRING, tokens.nextToken());
+        Assert.assertEquals("foo", tokens.stringValue());
+        Assert.assertEquals(Token.LONG, tokens.nextToken());
+        Assert.assertEquals(42L, tokens.longValue());
+        Assert.assertEquals(Token.DOUBLE, tokens.nextToken());
+        Assert.assertEquals(1.0625D, tokens.doubleValue(), 0D);
+        Assert.assertEquals(Token.NULL, tokens.nextToken());
+        Assert.assertEquals(Token.END_ARRAY, tokens.nextToken());
+        Assert.assertEquals(Token.END_OBJECT, tokens.nextToken());
+        Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+    }
+
+    @Test
+    public void testTokenValues() throws Exception {
+        System.out.println("JsonReaderTest: testTokenValues");
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            big.append((char) ('a' + i % 26));
+        String json = "[\"a\\u00e9\\\"\\n\", \"\u00e9\u20ac\ud83d\ude00\", " +
+            "-9223372036854775808, 12345678901234567890, 1e3, -0.5, " +
+            "-9223372036854775809, 0.12345678901234567890123, 1e400, \"" +
+            big + "\"]";
+        byte[] utf8 = json.getBytes("UTF-8");
+        TokenReader[] readers = new TokenReader[] {
+            new JsonTokenReader(new StringReader(json)),
+            new JsonTokenReader(utf8, 0, utf8.length),
+            new JsonTokenReader(new ByteArrayInputStream(utf8))
+        };
+        for (TokenReader tokens : readers) {
+            Assert.assertEquals(Token.BEGIN_ARRAY, tokens.nextToken());
+            Assert.assertEquals(Token.STRING, tokens.nextToken());
+            Assert.assertEquals("a\u00e9\"\n", tokens.stringValue());
+            Assert.assertEquals(Token.STRING, tokens.nextToken());
+            Assert.assertEquals("\u00e9\u20ac\ud83d\ude00",
+                    tokens.stringValue());
+            Assert.assertEquals(Token.LONG, tokens.nextToken());
+            Assert.assertEquals(Long.MIN_VALUE, tokens.longValue());
+            Assert.assertEquals(Token.NUMBER, tokens.nextToken());
+            Assert.assertEquals(new BigInteger("12345678901234567890"),
+                    tokens.value());
+            Assert.assertEquals(Token.DOUBLE, tokens.nextToken());
+            Assert.assertEquals(1000D, tokens.doubleValue(), 0D);
+            Assert.assertEquals(Token.DOUBLE, tokens.nextToken());
+            Assert.assertEquals(-0.5D, tokens.doubleValue(), 0D);
+            Assert.assertEquals(Token.NUMBER, tokens.nextToken());
+            Assert.assertEquals(new BigInteger("-9223372036854775809"),
+                    tokens.value());
+            Assert.assertEquals(Token.NUMBER, tokens.nextToken());
+            Assert.assertEquals(new BigDecimal("0.12345678901234567890123"),
+                    tokens.value());
+            Assert.assertEquals(Token.NUMBER, tokens.nextToken());
+            Assert.assertEquals(new BigDecimal("1e400"), tokens.value());
+            Assert.assertEquals(Token.STRING, tokens.nextToken());
+            Assert.assertEquals(big.toString(), tokens.stringValue());
+            Assert.assertEquals(Token.END_ARRAY, tokens.nextToken());
+            Assert.assertEquals(Token.END_DOCUMENT, tokens.nextToken());
+        }
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        System.out.println("JsonReaderTest: testNumbers");
+        String[] numbers = new String[] {
+            "0", "-0.0", "1.5", "-2.25e-3", "0.1", "123456.789E+2",
+            "9007199254740993", "4.9e-324", "1.7976931348623157e308",
+            "1e400", "2.2250738585072011e-308", "0.30000000000000004",
+            "1234567890123456789012345", "1e23", "8.41e21", "5e-22",
+            "00012"
+        };
+        java.util.Random random = new java.util.Random(21);
+        StringBuilder json = new StringBuilder("[");
+        java.util.List<String> all = new java.util.ArrayList<>();
+        all.addAll(java.util.Arrays.asList(numbers));
+        for (int i = 0; i < 20000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (! Double.isNaN(d) && ! Double.isInfinite(d))
+                all.add(Double.toString(d));
+            all.add(random.nextInt(1000000) + "e" + (random.nextInt(60) - 30));
+        }
+        for (String number : all)
+            json.append(number).append(',');
+        json.append("0]");
+        byte[] utf8 = json.toString().getBytes("UTF-8");
+        TokenReader[] readers = new TokenReader[] {
+            new JsonTokenReader(utf8, 0, utf8.length),
+            new JsonTokenReader(new ByteArrayInputStream(utf8))
+        };
+        for (TokenReader tokens : readers) {
+            Assert.assertEquals(Token.BEGIN_ARRAY, tokens.nextToken());
+            for (String number : all) {
+                Token token = tokens.nextToken();
+                if (token == Token.LONG)
+                    Assert.assertEquals(Long.parseLong(number),
+                            tokens.longValue());
+                else
+                    Assert.assertEquals(number,
+                            Double.doubleToLongBits(
+                                    Double.parseDouble(number)),
+                            Double.doubleToLongBits(tokens.doubleValue()));
+            }
+        }
+        for (String illegal : new String[] {
+                "-", "1.", ".5", "1e", "1e+", "--1", "1-2", "1.2.3" }) {
+            byte[] bytes = ("[" + illegal + "]").getBytes("UTF-8");
+            TokenReader tokens = new JsonTokenReader(bytes, 0, bytes.length);
+            tokens.nextToken();
+            try {
+                tokens.nextToken();
+                Assert.fail(illegal);
+            } catch (IllegalStateException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedUtf8() throws Exception {
+        System.out.println("JsonReaderTest: testMalformedUtf8");
+        int[][] inputs = new int[][] {
+            { 0xFF }, { 0xC0, 0x80 }, { 0x80, 0x80 }, { 0xE0, 0x80, 0x80 },
+            { 0xED, 0xA0, 0x80 }, { 0xF0, 0x80, 0x80, 0x80 },
+            { 0xF4, 0x90, 0x80, 0x80 }, { 0xE2, 0x82 }, { 0xC3, 'A' },
+            { 0xED, 0x9F, 0xBF }, { 0xF4, 0x8F, 0xBF, 0xBF }
+        };
+        String[] decoded = new String[] {
+            "\ufffd", "\ufffd\ufffd", "\ufffd\ufffd", "\ufffd",
+            "\ufffd", "\ufffd", "\ufffd", "\ufffd", "\ufffdA",
+            "\ud7ff", "\udbff\udfff"
+        };
+        for (int k = 0; k < inputs.length; k++) {
+            byte[] bytes = new byte[inputs[k].length + 4];
+            bytes[0] = '[';
+            bytes[1] = '"';
+            for (int i = 0; i < inputs[k].length; i++)
+                bytes[i + 2] = (byte) inputs[k][i];
+            bytes[bytes.length - 2] = '"';
+            bytes[bytes.length - 1] = ']';
+            TokenReader[] readers = new TokenReader[] {
+                new JsonTokenReader(bytes, 0, bytes.length),
+                new JsonTokenReader(new ByteArrayInputStream(bytes))
+            };
+            for (TokenReader tokens : readers) {
+                Assert.assertEquals(Token.BEGIN_ARRAY, tokens.nextToken());
+                Assert.assertEquals(Token.STRING, tokens.nextToken());
+                Assert.assertEquals(decoded[k], tokens.stringValue());
+                Assert.assertEquals(Token.END_ARRAY, tokens.nextToken());
+            }
+        }
+    }
+
+    @Test
+    public void testStringScan() throws Exception {
+        System.out.println("JsonReaderTest: testStringScan");
+        String[] specials = new String[] {
+            "\\\"", "\\\\", "\\n", "\u00e9", "\u007f", "\u0080"
+        };
+        String[] decoded = new String[] {
+            "\"", "\\", "\n", "\u00e9", "\u007f", "\u0080"
+        };
+        for (int k = 0; k < specials.length; k++) {
+            for (int n = 0; n < 40; n++) {
+                StringBuilder prefix = new StringBuilder();
+                for (int i = 0; i < n; i++)
+                    prefix.append((char) ('a' + i % 26));
+                String json = "{\"" + prefix + specials[k] + "x\":\"" +
+                        prefix + specials[k] + "x\",\"" + prefix + "\":1}";
+                byte[] utf8 = json.getBytes("UTF-8");
+                TokenReader tokens = new JsonTokenReader(utf8, 0, utf8.length);
+                String expected = prefix + decoded[k] + "x";
+                Assert.assertEquals(Token.BEGIN_OBJECT, tokens.nextToken());
+                Assert.assertEquals(Token.NAME, tokens.nextToken());
+                Assert.assertEquals(expected, tokens.currentName());
+                Assert.assertEquals(Token.STRING, tokens.nextToken());
+                Assert.assertEquals(expected, tokens.stringValue());
+                Assert.assertEquals(Token.NAME, tokens.nextToken());
+                Assert.assertEquals(prefix.toString(), tokens.currentName());
+            }
+        }
+        for (int n = 0; n < 40; n++) {
+            byte[] bytes = new byte[n + 4];
+            java.util.Arrays.fill(bytes, (byte) 'a');
+            bytes[0] = '[';
+            bytes[1] = '"';
+            bytes[n + 2] = 0x01;
+            bytes[n + 3] = '"';
+            TokenReader tokens = new JsonTokenReader(bytes, 0, bytes.length);
+            tokens.nextToken();
+            try {
+                tokens.nextToken();
+                Assert.fail("control character accepted");
+            } catch (IllegalStateException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testReadTree() throws Exception {
+        System.out.println("JsonReaderTest: testReadTree");
+        String json = "{ \"name\" : \"a\\\"b\\u00e9\", \"k\\u0065y\": 1,\n" +
+                "\"list\": [1, -2.5e3, true, null, {\"deep\": [\"]}\"]}, []]," +
+                "\"$type\": \"java.util.HashMap\", \"name\": \"last\" }";
+        ObjectType root = (ObjectType) new JsonReader(
+                json.getBytes("UTF-8")).readTree();
+        Assert.assertEquals("java.util.HashMap", root.getType());
+        Assert.assertEquals(3, root.entrySet().size());
+        Assert.assertEquals("last", root.get("name"));
+        Assert.assertEquals(1L, root.get("key"));
+        Assert.assertNull(root.get("$type"));
+        Assert.assertNull(root.get("missing"));
+        ArrayType list = (ArrayType) root.get("list");
+        Assert.assertSame(list, root.get("list"));
+        Assert.assertEquals(6, list.size());
+        Assert.assertEquals(-2500.0, list.get(1));
+        Assert.assertEquals(true, list.get(2));
+        Assert.assertNull(list.get(3));
+        ArrayType deep = (ArrayType) ((ObjectType) list.get(4)).get("deep");
+        Assert.assertEquals("]}", deep.get(0));
+        Assert.assertEquals(0, ((ArrayType) list.get(5)).size());
+        Assert.assertNull(root.put("added", 7L));
+        Assert.assertEquals("last", root.put("name", "first"));
+        Assert.assertEquals("first", root.get("name"));
+        Assert.assertEquals(7L, root.get("added"));
+
+        StringBuilder wide = new StringBuilder("{");
+        for (int i = 0; i < 100; i++)
+            wide.append(i == 0 ? "" : ",").append("\"k").append(i)
+                    .append("\":").append(i);
+        ObjectType object = (ObjectType) new JsonReader(new ByteArrayInputStream(
+                wide.append("}").toString().getBytes("UTF-8"))).readTree();
+        Assert.assertEquals(99L, object.get("k99"));
+        Assert.assertEquals(100, object.entrySet().size());
+
+        for (String bad : new String[] { "42", "{\"a\":1} x", "[1,2",
+                "{\"a\":\"b}" }) {
+            try {
+                new JsonReader(bad.getBytes("UTF-8")).readTree();
+                Assert.fail("accepted " + bad);
+            } catch (IllegalStateException ex) {
+            }
+        }
+        for (String bad : new String[] { "{\"a\" 1}", "[1 2]", "[tru]",
+                "{\"a\":}", "{\"a\":1:2}", "{\"a\":truex}", "[1\"x\"]",
+                "[\"x\"1]" }) {
+            Target tree = new JsonReader(bad.getBytes("UTF-8")).readTree();
+            try {
+                if (tree.isObjectType())
+                    ((ObjectType) tree).get("a");
+                else
+                    ((ArrayType) tree).get(0);
+                Assert.fail("accepted " + bad);
+            } catch (IllegalStateException ex) {
+            }
+        }
+    }
+
     private static void parseObjectEntry(final Reader reader, final String key)
             throws IOException {
         reader.pushHandler(new DefaultHandler() {
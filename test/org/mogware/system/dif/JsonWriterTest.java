@@ -214,4 +214,77 @@ public class JsonWriterTest {
             outputWriter.toString()
         );
     }
+
+    @Test
+    public void numbers() throws Exception {
+        System.out.println("JsonWriterTest: numbers");
+        StringWriter outputWriter = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(outputWriter);
+        jsonWriter
+            .beginArray()
+                .value(0).value(-7).value(Integer.MIN_VALUE)
+                .value(Long.MIN_VALUE).value(Long.MAX_VALUE)
+                .value(0.0).value(-0.0).value(100.0).value(1.0E7)
+                .value(9999999.5).value(0.001).value(9.99E-4).value(1.0E-18)
+                .value(Double.MIN_VALUE).value(Double.MAX_VALUE)
+                .value(0.1f).value(1.0E10f)
+            .endArray();
+        jsonWriter.close();
+        Assert.assertEquals(
+            "[0,-7,-2147483648,-9223372036854775808,9223372036854775807," +
+            "0.0,-0.0,100.0,1.0E7,9999999.5,0.001,9.99E-4,1.0E-18," +
+            "4.9E-324,1.7976931348623157E308,0.1,1.0E10]",
+            outputWriter.toString()
+        );
+    }
+
+    @Test
+    public void doubleRoundTrip() throws Exception {
+        System.out.println("JsonWriterTest: doubleRoundTrip");
+        java.util.Random random = new java.util.Random(19);
+        char[] buf = new char[32];
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d) || Double.isInfinite(d))
+                continue;
+            int n = NumberWriter.writeDouble(d, buf, 0);
+            Assert.assertEquals(d, Double.parseDouble(new String(buf, 0, n)));
+            float f = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(f) || Float.isInfinite(f))
+                continue;
+            n = NumberWriter.writeFloat(f, buf, 0);
+            Assert.assertEquals(f, Float.parseFloat(new String(buf, 0, n)));
+        }
+    }
+
+    @Test
+    public void utf8Output() throws Exception {
+        System.out.println("JsonWriterTest: utf8Output");
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            large.append("ab\"\u00e9\u20ac\ud83d\ude00\u0001");
+        String[] values = new String[] {
+            "plain", "quote\" back\\ tab\t nl\n cr\r\b\f\u001f",
+            "<>&='", "\u00e9\u20ac\ud83d\ude00", "lone\ud83d", "",
+            large.toString()
+        };
+        StringWriter outputWriter = new StringWriter();
+        java.io.ByteArrayOutputStream outputStream =
+                new java.io.ByteArrayOutputStream();
+        for (JsonWriter jsonWriter : new JsonWriter[] {
+                new JsonWriter(outputWriter), new JsonWriter(outputStream) }) {
+            jsonWriter.setIndent("\u00a0");
+            jsonWriter.beginArray();
+            for (String value : values)
+                jsonWriter.value(value).beginMap(null)
+                        .propertyName(value).value(value).endMap();
+            jsonWriter.value(-1.5).value(Long.MIN_VALUE).endArray();
+            jsonWriter.close();
+        }
+        Assert.assertEquals(outputWriter.toString().replace("\ud83d\"", "?\""),
+                new String(outputStream.toByteArray(), "UTF-8"));
+        Assert.assertTrue(outputWriter.toString()
+                .contains("\"quote\\\" back\\\\ tab\\t nl\\n " +
+                        "cr\\r\\b\\f\\u001f\""));
+    }
 }
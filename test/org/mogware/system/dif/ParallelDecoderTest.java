@@ -0,0 +1,130 @@
+package org.mogware.system.dif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParallelDecoderTest {
+    private static final int COUNT = 5000;
+
+    @Test
+    public void jsonLines() throws Exception {
+        System.out.println("ParallelDecoderTest: jsonLines");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(output);
+        new Encoder().encodeAll(writer, records().iterator());
+        writer.close();
+        assertDecoded(output.toByteArray(), ParallelDecoder.Format.JSON_LINES);
+    }
+
+    @Test
+    public void cborSequence() throws Exception {
+        System.out.println("ParallelDecoderTest: cborSequence");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (Object record : records()) {
+            CborWriter writer = new CborWriter(output);
+            new Encoder().encode(writer, record);
+            writer.close();
+        }
+        assertDecoded(output.toByteArray(),
+                ParallelDecoder.Format.CBOR_SEQUENCE);
+    }
+
+    @Test
+    public void bsonDocuments() throws Exception {
+        System.out.println("ParallelDecoderTest: bsonDocuments");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (Object record : records()) {
+            BsonWriter writer = new BsonWriter(output);
+            new Encoder().encode(writer, record);
+            writer.close();
+        }
+        assertDecoded(output.toByteArray(),
+                ParallelDecoder.Format.BSON_DOCUMENTS);
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        System.out.println("ParallelDecoderTest: truncated");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (Object record : records()) {
+            BsonWriter writer = new BsonWriter(output);
+            new Encoder().encode(writer, record);
+            writer.close();
+        }
+        byte[] bytes = output.toByteArray();
+        Path file = Files.createTempFile("records", ".bson");
+        try {
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+            ParallelDecoder decoder = new ParallelDecoder();
+            decoder.setChunkSize(1024);
+            decoder.decode(file, ParallelDecoder.Format.BSON_DOCUMENTS,
+                    Object.class);
+            fail("truncated input accepted");
+        } catch (IOException ex) {
+        } finally {
+            delete(file);
+        }
+    }
+
+    private static List<Object> records() {
+        List<Object> records = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            Item record = new Item();
+            record.name = "record " + i;
+            record.objects = new ArrayList<>(Arrays.asList(
+                    new TestObject(i % 2 == 0, i, i / 8.0),
+                    new TestObject(true, -i, 0.5)));
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static void assertDecoded(byte[] bytes,
+            ParallelDecoder.Format format) throws Exception {
+        Path file = Files.createTempFile("records", ".bin");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.write(file, bytes);
+            List<Object> expected = records();
+            for (int chunkSize : new int[] { 1, 1000, 64 << 10, 1 << 30 }) {
+                ParallelDecoder decoder = new ParallelDecoder();
+                decoder.setPool(pool);
+                decoder.setChunkSize(chunkSize);
+                List<Object> decoded = decoder.decode(file, format,
+                        Object.class);
+                assertEquals(COUNT, decoded.size());
+                for (int i = 0; i < COUNT; i++) {
+                    Item a = (Item) expected.get(i);
+                    Item b = (Item) decoded.get(i);
+                    assertEquals(a.name, b.name);
+                    assertEquals(a.objects, b.objects);
+                }
+            }
+        } finally {
+            pool.shutdown();
+            delete(file);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    public static class Item {
+        String name;
+        List<TestObject> objects;
+    }
+}
@@ -0,0 +1,47 @@
+package org.mogware.system.dif;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class SymbolTableTest {
+    @Test
+    public void lookup() throws Exception {
+        System.out.println("SymbolTableTest: lookup");
+        SymbolTable symbols = new SymbolTable(16);
+        byte[] bytes = "xname\u00e9".getBytes(StandardCharsets.UTF_8);
+        String first = symbols.lookup(bytes, 1, bytes.length - 1);
+        assertEquals("name\u00e9", first);
+        assertSame(first, symbols.lookup(bytes, 1, bytes.length - 1));
+        assertNotSame(first, symbols.lookup(bytes, 0, bytes.length));
+        String name = new String("other");
+        assertSame(name, symbols.intern(name));
+        assertSame(name, symbols.lookup(
+                "other".getBytes(StandardCharsets.UTF_8), 0, 5));
+    }
+
+    @Test
+    public void sharedWithClassMeta() throws Exception {
+        System.out.println("SymbolTableTest: sharedWithClassMeta");
+        String key = null;
+        for (String name : ClassMeta.getDefault()
+                .getDeepDeclaredFields(TestRecord.class).keySet()) {
+            if (name.equals("counts"))
+                key = name;
+        }
+        byte[] json = "{\"counts\":1}".getBytes(StandardCharsets.UTF_8);
+        TokenReader tokens = new JsonTokenReader(json, 0, json.length);
+        tokens.nextToken();
+        tokens.nextToken();
+        assertSame(key, tokens.currentName());
+        byte[] cbor = new byte[] { (byte) 0xA1, 0x66,
+                'c', 'o', 'u', 'n', 't', 's', 0x01 };
+        tokens = new CborTokenReader(new ByteArrayInputStream(cbor));
+        tokens.nextToken();
+        tokens.nextToken();
+        assertSame(key, tokens.currentName());
+    }
+}
@@ -0,0 +1,21 @@
+package org.mogware.system.dif;
+
+public class TestArrays {
+    byte[] bytes;
+    short[] shorts;
+    int[] ints;
+    long[] longs;
+    float[] floats;
+    double[] doubles;
+
+    static TestArrays sample() {
+        TestArrays arrays = new TestArrays();
+        arrays.bytes = new byte[] { 1, -2, 3 };
+        arrays.shorts = new short[] { 4, -5 };
+        arrays.ints = new int[] { 6, -7, Integer.MAX_VALUE };
+        arrays.longs = new long[] { 8L, Long.MIN_VALUE };
+        arrays.floats = new float[] { 9.5F };
+        arrays.doubles = new double[] { 10.25D, -11D };
+        return arrays;
+    }
+}
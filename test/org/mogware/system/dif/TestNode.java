@@ -0,0 +1,12 @@
+package org.mogware.system.dif;
+
+public class TestNode {
+    String name;
+    TestNode next;
+    TestNode other;
+    int[] values;
+
+    TestNode(String name) {
+        this.name = name;
+    }
+}
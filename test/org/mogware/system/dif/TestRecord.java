@@ -0,0 +1,12 @@
+package org.mogware.system.dif;
+
+import java.util.List;
+import java.util.Map;
+
+public class TestRecord {
+    String name;
+    List<TestObject> items;
+    Map<String, Integer> counts;
+    int[] values;
+    TestNode node;
+}